@@ -0,0 +1,23 @@
+package org.vaadin.devoxx2k10;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.vaadin.devoxx2k10.data.CachingRestApiFacade;
+
+/**
+ * Releases the resources shared by all application instances, such as
+ * background threads, when the web application is undeployed.
+ */
+public class ApplicationContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(final ServletContextEvent event) {
+        // nothing to do, the shared resources are initialized lazily
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent event) {
+        CachingRestApiFacade.shutdown();
+    }
+}
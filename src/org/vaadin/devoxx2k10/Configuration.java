@@ -42,6 +42,18 @@ public class Configuration {
         return Boolean.valueOf(getProperty(key));
     }
 
+    public static int getIntProperty(String key, int defaultValue) {
+        final String property = getProperty(key);
+        if (property != null && property.length() > 0) {
+            try {
+                return Integer.parseInt(property);
+            } catch (final NumberFormatException e) {
+                throw new RuntimeException("Invalid integer value for property " + key + ": " + property, e);
+            }
+        }
+        return defaultValue;
+    }
+
     public static String[] getArrayProperty(String key) {
         if (getProperty(key) != null) {
             String[] result = getProperty(key).split(",");
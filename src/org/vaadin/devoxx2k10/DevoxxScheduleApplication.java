@@ -3,10 +3,12 @@ package org.vaadin.devoxx2k10;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.log4j.Logger;
 import org.vaadin.browsercookies.BrowserCookies;
 import org.vaadin.devoxx2k10.data.CachingRestApiFacade;
+import org.vaadin.devoxx2k10.data.MyScheduleWriter;
 import org.vaadin.devoxx2k10.data.RestApiException;
 import org.vaadin.devoxx2k10.data.RestApiFacade;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
@@ -21,6 +23,7 @@ import com.vaadin.service.ApplicationContext.TransactionListener;
 import com.vaadin.terminal.gwt.server.WebApplicationContext;
 import com.vaadin.terminal.gwt.server.WebBrowser;
 import com.vaadin.ui.Window;
+import com.vaadin.ui.Window.Notification;
 
 /**
  * Vaadin Application for displaying Devoxx 2010 schedules using the Vaadin
@@ -32,7 +35,8 @@ import com.vaadin.ui.Window;
  * @link http://www.devoxx.com/display/Devoxx2K10/Schedule+REST+interface
  * @link http://vaadin.com/addon/vaadin-calendar
  */
-public class DevoxxScheduleApplication extends Application implements TransactionListener, BrowserCookies.UpdateListener {
+public class DevoxxScheduleApplication extends Application implements TransactionListener,
+        BrowserCookies.UpdateListener, MyScheduleWriter.SaveFailureListener {
 
     private static final String COOKIE_FIELD_SEPARATOR = ",";
     private static final long COOKIE_EXPIRATION_IN_MILLIS = 365 * 24 * 60 * 60 * 1000L;
@@ -50,6 +54,12 @@ public class DevoxxScheduleApplication extends Application implements Transactio
 
     private transient RestApiFacade backendFacade;
 
+    /** Messages of failed MySchedule saves not shown to the user yet */
+    private final ConcurrentLinkedQueue<String> saveFailures = new ConcurrentLinkedQueue<String>();
+
+    /** Users whose activation code was rejected when saving in the background */
+    private final ConcurrentLinkedQueue<MyScheduleUser> rejectedUsers = new ConcurrentLinkedQueue<MyScheduleUser>();
+
     private BrowserCookies cookies;
     private GoogleAnalyticsTracker tracker;
 
@@ -195,10 +205,8 @@ public class DevoxxScheduleApplication extends Application implements Transactio
 
         final MyScheduleUser newUser = new MyScheduleUser(email, activationCode);
 
-        if (getBackendFacade().isValidUser(newUser)) {
-            // valid user -> load the favourites for this user from the backend
-            getBackendFacade().getScheduleForUser(newUser);
-
+        // validates the user and loads the favourites from the backend
+        if (getBackendFacade().signIn(newUser)) {
             // set the new user instance as the logged in user
             setUser(newUser);
             return true;
@@ -242,10 +250,33 @@ public class DevoxxScheduleApplication extends Application implements Transactio
         return window;
     }
 
+    /**
+     * Queues the failure to be shown to the user on the next request, as this
+     * is called in a background thread. A rejected activation code is also
+     * cleared from the user only then, while holding the session lock.
+     */
+    @Override
+    public void saveFailed(final MyScheduleUser user, final RestApiException e, final boolean codeRejected) {
+        if (codeRejected) {
+            rejectedUsers.add(user);
+        }
+        saveFailures.add(e.getMessage());
+    }
+
     public void transactionStart(final Application application, final Object transactionData) {
         if (application == this) {
             // set the ThreadLocal value
             currentApplication.set(this);
+
+            MyScheduleUser rejected;
+            while ((rejected = rejectedUsers.poll()) != null) {
+                rejected.setActivationCode(null);
+            }
+
+            String message;
+            while ((message = saveFailures.poll()) != null) {
+                getMainWindow().showNotification(message, Notification.TYPE_ERROR_MESSAGE);
+            }
         }
     }
 
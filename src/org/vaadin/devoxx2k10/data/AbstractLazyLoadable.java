@@ -0,0 +1,50 @@
+package org.vaadin.devoxx2k10.data;
+
+/**
+ * Base class for {@link LazyLoadable}s keeping track of whether the details
+ * have been loaded. Subclasses call {@link #ensureLoaded()} at the beginning of
+ * each of their {@link LazyLoad} annotated getters, so only those getters pay
+ * for the check and all other getters are plain field reads.
+ */
+public abstract class AbstractLazyLoadable implements LazyLoadable {
+
+    private volatile LazyLoadProvider lazyLoadProvider;
+    private volatile boolean loaded;
+
+    /**
+     * Sets the provider used to load the details. Without a provider the
+     * details are never loaded.
+     * 
+     * @param lazyLoadProvider
+     */
+    public void setLazyLoadProvider(final LazyLoadProvider lazyLoadProvider) {
+        this.lazyLoadProvider = lazyLoadProvider;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLoadPending() {
+        return !loaded && lazyLoadProvider != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The details are loaded only once even if called from several threads,
+     * for example by the UI and a background prefetch at the same time.
+     */
+    @Override
+    public void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                final LazyLoadProvider provider = lazyLoadProvider;
+                if (!loaded && provider != null) {
+                    provider.lazyLoadFields(this);
+                    loaded = true;
+                }
+            }
+        }
+    }
+}
@@ -1,37 +1,71 @@
 package org.vaadin.devoxx2k10.data;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
 
 import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
 import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.util.ExpiringLruCache;
+import org.vaadin.devoxx2k10.util.IntSet;
 
+/**
+ * RestApiFacade caching the schedule, search results, lazy loaded details and
+ * signed in users for all users of the application.
+ *
+ * The shared data is loaded through one facade created with the HttpClient of
+ * the first facade using the cache, never through the facade of a session.
+ * The schedule and the search results are cached, refreshed in the background
+ * and indexed by {@link ScheduleCache}. Searches use the indexes once they are
+ * ready. The details of a loaded schedule are prefetched in the background,
+ * and MySchedule favourites are saved in the background by a
+ * {@link MyScheduleWriter}. The sizes, times and rates of all this are set in
+ * the configuration properties.
+ *
+ * The background threads are started on first use and must be stopped with
+ * {@link #shutdown()} when the application is undeployed.
+ */
 public class CachingRestApiFacade extends RestApiFacadeImpl {
 
-    private static final ConcurrentHashMap<String, List<DevoxxPresentation>> scheduleCache = new ConcurrentHashMap<String, List<DevoxxPresentation>>();
+    private static final long CACHE_EXPIRATION_IN_MS = Configuration.getIntProperty("cache.expiration.ms",
+            1000 * 60 * 60);
 
-    private static long CACHE_EXPIRATION_IN_MS = 1000 * 60 * 60;
+    private static final long CACHE_REFRESH_IN_MS = Configuration.getIntProperty("cache.refresh.ms", 1000 * 60 * 30);
+
+    private static final ScheduleCache scheduleCache = new ScheduleCache(CACHE_EXPIRATION_IN_MS,
+            CACHE_REFRESH_IN_MS, Configuration.getIntProperty("search.cache.max.size", 200),
+            Configuration.getIntProperty("search.cache.ttl.ms", (int) CACHE_EXPIRATION_IN_MS));
+
+    /**
+     * Lazy loaded details by their ids, kept across schedule refreshes and
+     * shared by the presentation instances with the same id
+     */
+    private static final ExpiringLruCache<String, JSONObject> detailCache = new ExpiringLruCache<String, JSONObject>(
+            Configuration.getIntProperty("detail.cache.max.size", 2000), Configuration.getIntProperty(
+                    "detail.cache.ttl.ms", 1000 * 60 * 60 * 6));
+
+    /** Signed in users by their e-mail and activation code */
+    private static final ExpiringLruCache<String, SignedInUser> userCache = new ExpiringLruCache<String, SignedInUser>(
+            Configuration.getIntProperty("user.cache.max.size", 1000), Configuration.getIntProperty(
+                    "user.cache.ttl.ms", 1000 * 60 * 5));
 
     private static Logger logger = Logger.getLogger(CachingRestApiFacade.class);
 
-    static {
-        // Start a timer for clearing the cache periodically.
-        final Timer cacheClearTimer = new Timer();
+    /** Loads the schedule through the facade loading all shared data */
+    private static volatile ScheduleLoader loader;
 
-        cacheClearTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (logger.isInfoEnabled()) {
-                    logger.info("Clearing cached schedule data.");
-                }
-                scheduleCache.clear();
-            }
-        }, CACHE_EXPIRATION_IN_MS, CACHE_EXPIRATION_IN_MS);
-    }
+    private static DetailPrefetcher prefetcher;
+
+    private static MyScheduleWriter myScheduleWriter;
+
+    private static volatile SpeakerIndex speakerIndex;
 
     public CachingRestApiFacade() {
         super();
@@ -41,42 +75,398 @@ public class CachingRestApiFacade extends RestApiFacadeImpl {
         super(jsonProvider);
     }
 
+    /**
+     * Clears all cached data. Loads already in progress still complete for
+     * the callers waiting for them.
+     */
+    public static void clearCache() {
+        scheduleCache.clear();
+        detailCache.clear();
+        userCache.clear();
+        speakerIndex = null;
+        loader = null;
+    }
+
+    /**
+     * Returns the tag index of the current schedule or null if it hasn't been
+     * built yet.
+     *
+     * @return
+     */
+    public static TagIndex getTagIndex() {
+        return scheduleCache.getTagIndex();
+    }
+
+    /**
+     * Returns the full-text index of the current schedule or null if it hasn't
+     * been built yet.
+     *
+     * @return
+     */
+    public static FullTextIndex getFullTextIndex() {
+        return scheduleCache.getFullTextIndex();
+    }
+
+    /**
+     * Returns the statistics of the search result cache, such as its size and
+     * hit count, for monitoring.
+     *
+     * @return
+     */
+    public static String getSearchCacheStatistics() {
+        return scheduleCache.getSearchCacheStatistics();
+    }
+
+    /**
+     * Returns the statistics of the detail cache for monitoring.
+     *
+     * @return
+     */
+    public static String getDetailCacheStatistics() {
+        return detailCache.toString();
+    }
+
+    /**
+     * Returns the statistics of the signed in user cache for monitoring.
+     *
+     * @return
+     */
+    public static String getUserCacheStatistics() {
+        return userCache.toString();
+    }
+
+    /**
+     * Returns the statistics of the MySchedule writer, such as the number of
+     * unsaved users and the time it takes to save, for monitoring.
+     *
+     * @return
+     */
+    public static synchronized String getMyScheduleWriterStatistics() {
+        return myScheduleWriter != null ? myScheduleWriter.toString() : "not started";
+    }
+
+    /**
+     * Stops the background threads. The threads are started again if the
+     * facade is used after this.
+     */
+    public static synchronized void shutdown() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+        if (myScheduleWriter != null) {
+            myScheduleWriter.shutdown(Configuration.getIntProperty("myschedule.save.shutdown.timeout.ms", 10000));
+            myScheduleWriter = null;
+        }
+        scheduleCache.shutdown();
+    }
+
+    /**
+     * Returns the shared prefetcher, starting it if needed, or null if
+     * prefetching is disabled.
+     */
+    private static synchronized DetailPrefetcher getPrefetcher() {
+        if (prefetcher == null) {
+            final int threads = Configuration.getIntProperty("prefetch.threads", 4);
+            if (threads > 0) {
+                prefetcher = new DetailPrefetcher(threads, Configuration.getIntProperty(
+                        "prefetch.requests.per.second", 10), Configuration.getIntProperty("prefetch.queue.max.size",
+                        DetailPrefetcher.DEFAULT_MAX_QUEUE_SIZE), new DetailPrefetcher.DetailCache() {
+                    @Override
+                    public boolean isCached(final LazyLoadable lazy) {
+                        return detailCache.peek(getDetailKey(lazy)) != null;
+                    }
+                });
+            }
+        }
+        return prefetcher;
+    }
+
+    /**
+     * Returns the shared MySchedule writer, starting it if needed.
+     */
+    private static synchronized MyScheduleWriter getMyScheduleWriter() {
+        if (myScheduleWriter == null) {
+            myScheduleWriter = new MyScheduleWriter(Configuration.getIntProperty("myschedule.save.threads", 2),
+                    Configuration.getIntProperty("myschedule.save.delay.ms", 500), Configuration.getIntProperty(
+                            "myschedule.save.max.attempts", 5), Configuration.getIntProperty(
+                            "myschedule.save.backoff.ms", 1000), Configuration.getIntProperty(
+                            "myschedule.save.max.backoff.ms", 30000));
+        }
+        return myScheduleWriter;
+    }
+
+    /**
+     * Refreshes the cached data now. Data that has expired is dropped and the
+     * rest is reloaded, keeping the previous data if reloading fails.
+     */
+    public static void refresh() {
+        scheduleCache.refresh();
+    }
+
+    /**
+     * Returns the loader of the shared data, creating its facade with the
+     * HttpClient of this facade if there is none yet.
+     */
+    private ScheduleLoader getLoader() {
+        ScheduleLoader current = loader;
+        if (current == null) {
+            synchronized (CachingRestApiFacade.class) {
+                current = loader;
+                if (current == null) {
+                    current = new ScheduleLoader(new CachingRestApiFacade(getHttpClient()));
+                    loader = current;
+                }
+            }
+        }
+        return current;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<DevoxxPresentation> getFullSchedule() {
-        // Note that with some unlucky timing, two threads might
-        // call the super version of this method. In case of this
-        // application this is not a problem. Could be solved by
-        // using Futures instead of the resulting List directly.
+        return scheduleCache.getSchedule(getLoader());
+    }
 
-        List<DevoxxPresentation> scheduleData = scheduleCache.get("schedule");
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DevoxxPresentation> search(final String tag) {
+        final TagIndex index = scheduleCache.getTagIndex();
+        if (index != null) {
+            return Collections.unmodifiableList(index.search(tag));
+        }
 
-        if (scheduleData == null) {
-            // cache miss
-            scheduleData = Collections.unmodifiableList(super.getFullSchedule());
-            scheduleCache.put("schedule", scheduleData);
+        // not indexed yet, fall back to the remote search
+        return scheduleCache.getSearchResult(tag, new SearchLoader(getLoader().facade, tag));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Uses the full-text index of the current schedule. Until the index is
+     * ready, the query is searched as a tag instead, so that the request
+     * doesn't wait for the details of every presentation to be loaded.
+     */
+    @Override
+    public List<DevoxxPresentation> searchText(final String query) {
+        final FullTextIndex index = scheduleCache.getFullTextIndex();
+        if (index != null) {
+            return Collections.unmodifiableList(index.search(query));
         }
-        return scheduleData;
+        return search(query);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<DevoxxPresentation> search(final String tag) {
-        // Note that with some unlucky timing, two threads might
-        // call the super version of this method. In case of this
-        // application this is not a problem. Could be solved by
-        // using Futures instead of the resulting List directly.
-
-        List<DevoxxPresentation> scheduleData = scheduleCache.get("search-" + tag);
-        if (scheduleData == null) {
-            // cache miss
-            scheduleData = Collections.unmodifiableList(super.search(tag));
-            scheduleCache.put("search-" + tag, scheduleData);
-        }
-        return scheduleData;
+    public DevoxxSpeaker getSpeaker(final int speakerId) {
+        return getSpeakerIndex().getSpeaker(speakerId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DevoxxPresentation> getTalksBySpeaker(final int speakerId) {
+        return Collections.unmodifiableList(getSpeakerIndex().getTalks(speakerId));
+    }
+
+    /**
+     * Returns the speaker index of the current schedule, building it if the
+     * schedule has changed. Building it is cheap as it doesn't need any lazy
+     * loaded details.
+     */
+    private SpeakerIndex getSpeakerIndex() {
+        final List<DevoxxPresentation> schedule = getFullSchedule();
+        SpeakerIndex index = speakerIndex;
+        if (index == null || index.getSchedule() != schedule) {
+            index = SpeakerIndex.build(schedule);
+            speakerIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The favourites are saved in the background, coalescing the changes the
+     * user makes meanwhile.
+     */
+    @Override
+    public void saveMyScheduleLater(final MyScheduleUser user, final MyScheduleWriter.SaveFailureListener listener) {
+        getMyScheduleWriter().save(this, user, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The favourites remembered for a signed in user are updated once they
+     * have been saved, and a user whose activation code is rejected is removed
+     * from the cache.
+     */
+    @Override
+    public void saveMySchedule(final MyScheduleUser user) throws RestApiException {
+        final String key = getUserKey(user);
+        try {
+            super.saveMySchedule(user);
+            rememberFavourites(user);
+        } catch (final RestApiException e) {
+            if (user.getActivationCode() == null) {
+                // the activation code was rejected
+                userCache.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Users signed in recently are signed in again without the REST API,
+     * using the favourites they had then.
+     */
+    @Override
+    public boolean signIn(final MyScheduleUser user) throws RestApiException {
+        final String key = getUserKey(user);
+        final SignedInUser signedIn = userCache.get(key);
+        if (signedIn != null) {
+            user.setFavourites(new IntSet(signedIn.favourites));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Signed in user " + user.getEmail() + " from the cache.");
+            }
+            return true;
+        }
+
+        if (!super.signIn(user)) {
+            return false;
+        }
+        if (user.getFavourites() != null) {
+            userCache.put(key, new SignedInUser(new IntSet(user.getFavourites())));
+        }
+        return true;
+    }
+
+    /**
+     * Updates the favourites of the given user if the user is in the cache.
+     */
+    private static void rememberFavourites(final MyScheduleUser user) {
+        if (user.getFavourites() == null) {
+            return;
+        }
+        final SignedInUser signedIn = userCache.peek(getUserKey(user));
+        if (signedIn != null) {
+            signedIn.favourites = new IntSet(user.getFavourites());
+        }
+    }
+
+    private static String getUserKey(final MyScheduleUser user) {
+        return user.getEmail() + "\n" + user.getActivationCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The details are loaded in the background before the details of the
+     * whole schedule.
+     */
+    @Override
+    public void prefetchDetails(final List<DevoxxPresentation> presentations) {
+        final DetailPrefetcher detailPrefetcher = getPrefetcher();
+        if (detailPrefetcher != null) {
+            detailPrefetcher.prefetch(presentations, true);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The details are shared by all presentation or speaker instances with the
+     * same id.
+     */
+    @Override
+    protected JSONObject loadDetails(final LazyLoadable lazy) throws IOException, JSONException {
+        final String key = getDetailKey(lazy);
+        JSONObject details = detailCache.get(key);
+        if (details == null) {
+            details = super.loadDetails(lazy);
+            if (details != null) {
+                detailCache.put(key, details);
+            }
+        }
+        return details;
+    }
+
+    private List<DevoxxPresentation> loadFullSchedule() {
+        return super.getFullSchedule();
+    }
+
+    private List<DevoxxPresentation> loadSearch(final String tag) {
+        return super.search(tag);
+    }
+
+    private static String getDetailKey(final LazyLoadable lazy) {
+        if (lazy instanceof DevoxxPresentation) {
+            return "presentation/" + ((DevoxxPresentation) lazy).getId();
+        } else if (lazy instanceof DevoxxSpeaker) {
+            return "speaker/" + ((DevoxxSpeaker) lazy).getId();
+        }
+        return lazy.getLazyLoadingUri();
+    }
+
+    /**
+     * Loads the schedule through the given facade and indexes it.
+     */
+    private static class ScheduleLoader implements Callable<List<DevoxxPresentation>> {
+
+        private final CachingRestApiFacade facade;
+
+        public ScheduleLoader(final CachingRestApiFacade facade) {
+            this.facade = facade;
+        }
+
+        @Override
+        public List<DevoxxPresentation> call() {
+            // unmodifiable already, and the same instance if the schedule
+            // hasn't changed so that nothing is rebuilt for it
+            final List<DevoxxPresentation> schedule = facade.loadFullSchedule();
+            scheduleCache.index(schedule, getPrefetcher());
+            return schedule;
+        }
+    }
+
+    /**
+     * Searches a tag remotely through the given facade.
+     */
+    private static class SearchLoader implements Callable<List<DevoxxPresentation>> {
+
+        private final CachingRestApiFacade facade;
+        private final String tag;
+
+        public SearchLoader(final CachingRestApiFacade facade, final String tag) {
+            this.facade = facade;
+            this.tag = tag;
+        }
+
+        @Override
+        public List<DevoxxPresentation> call() {
+            return Collections.unmodifiableList(facade.loadSearch(tag));
+        }
+    }
+
+    /**
+     * The favourites of a signed in user.
+     */
+    private static class SignedInUser {
+
+        private volatile IntSet favourites;
+
+        public SignedInUser(final IntSet favourites) {
+            this.favourites = favourites;
+        }
     }
 }
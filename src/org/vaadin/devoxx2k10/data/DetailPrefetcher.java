@@ -0,0 +1,270 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.util.RateLimiter;
+
+/**
+ * Loads the lazy loaded details of presentations and their speakers in the
+ * background so that they are already in memory when the user opens them.
+ *
+ * A fixed number of threads load the details concurrently, and the requests
+ * they make are limited to the given rate to be polite towards the REST API.
+ * Urgent requests, such as the presentations of the day the user is looking
+ * at, are loaded before the rest.
+ *
+ * A detail is not queued again while it is queued or being loaded, and the
+ * queue holds at most the given number of details: when it's full, non-urgent
+ * details are dropped and urgent ones push out the last queued ones. Dropped
+ * details are loaded when they are accessed. Details found in the given cache
+ * are loaded without waiting for the rate limit, as they don't make a request.
+ */
+public class DetailPrefetcher {
+
+    /**
+     * Tells whether the details of an object can be loaded without making a
+     * request.
+     */
+    public interface DetailCache {
+
+        boolean isCached(LazyLoadable lazy);
+    }
+
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 5000;
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    /** Details waiting to be loaded, guards itself and pending */
+    private final LinkedList<LazyLoadable> queue = new LinkedList<LazyLoadable>();
+    /** The details queued or being loaded, by identity */
+    private final Set<LazyLoadable> pending = Collections
+            .newSetFromMap(new IdentityHashMap<LazyLoadable, Boolean>());
+    private final int maxQueueSize;
+    private final DetailCache detailCache;
+    private final List<Thread> workers;
+    private final RateLimiter rateLimiter;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a new prefetcher with the default queue size and
+     * without a cache.
+     *
+     * @param threads
+     *            number of concurrent requests.
+     * @param requestsPerSecond
+     *            maximum rate of requests or 0 for no limit.
+     */
+    public DetailPrefetcher(final int threads, final int requestsPerSecond) {
+        this(threads, requestsPerSecond, DEFAULT_MAX_QUEUE_SIZE, null);
+    }
+
+    /**
+     * Creates and starts a new prefetcher.
+     *
+     * @param threads
+     *            number of concurrent requests.
+     * @param requestsPerSecond
+     *            maximum rate of requests or 0 for no limit.
+     * @param maxQueueSize
+     *            maximum number of details waiting to be loaded.
+     * @param detailCache
+     *            cache whose hits are not rate limited, or null.
+     */
+    public DetailPrefetcher(final int threads, final int requestsPerSecond, final int maxQueueSize,
+            final DetailCache detailCache) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("The queue must hold at least one detail");
+        }
+        this.maxQueueSize = maxQueueSize;
+        this.detailCache = detailCache;
+        rateLimiter = new RateLimiter(requestsPerSecond);
+
+        workers = new ArrayList<Thread>(threads);
+        for (int i = 0; i < threads; i++) {
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "detail-prefetch-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the details of the given presentations and their speakers for
+     * loading. Details already loaded or already queued are skipped, except
+     * that urgent ones are moved to the front of the queue.
+     *
+     * @param presentations
+     * @param urgent
+     *            true to load these before the previously queued ones.
+     */
+    public void prefetch(final List<DevoxxPresentation> presentations, final boolean urgent) {
+        final Set<LazyLoadable> unloadedSet = new LinkedHashSet<LazyLoadable>();
+        for (final DevoxxPresentation presentation : presentations) {
+            if (isLoadPending(presentation)) {
+                unloadedSet.add((LazyLoadable) presentation);
+            }
+            for (final DevoxxSpeaker speaker : presentation.getSpeakers()) {
+                if (isLoadPending(speaker)) {
+                    unloadedSet.add((LazyLoadable) speaker);
+                }
+            }
+        }
+
+        final List<LazyLoadable> unloaded = new ArrayList<LazyLoadable>(unloadedSet);
+        int added = 0;
+        int dropped = 0;
+        final int queueSize;
+        synchronized (queue) {
+            if (urgent) {
+                // add in reverse to keep the order
+                for (int i = unloaded.size() - 1; i >= 0; i--) {
+                    final LazyLoadable lazy = unloaded.get(i);
+                    if (pending.contains(lazy)) {
+                        if (!removeQueued(lazy)) {
+                            // already being loaded
+                            continue;
+                        }
+                    } else if (queue.size() >= maxQueueSize) {
+                        pending.remove(queue.removeLast());
+                        dropped++;
+                    }
+                    queue.addFirst(lazy);
+                    pending.add(lazy);
+                    added++;
+                }
+            } else {
+                for (final LazyLoadable lazy : unloaded) {
+                    if (pending.contains(lazy)) {
+                        continue;
+                    } else if (queue.size() >= maxQueueSize) {
+                        dropped++;
+                        continue;
+                    }
+                    queue.addLast(lazy);
+                    pending.add(lazy);
+                    added++;
+                }
+            }
+            queueSize = queue.size();
+            queue.notifyAll();
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Queued " + added + " details for prefetching, dropped " + dropped + ", " + queueSize
+                    + " in queue.");
+        }
+    }
+
+    /**
+     * Removes the given detail from the queue, returning false if it isn't in
+     * the queue. Compares by identity, as the equals of the domain objects
+     * compares their fields.
+     */
+    private boolean removeQueued(final LazyLoadable lazy) {
+        for (final Iterator<LazyLoadable> i = queue.iterator(); i.hasNext();) {
+            if (i.next() == lazy) {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of details waiting to be loaded.
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Stops the prefetch threads. Details still in the queue are not loaded.
+     */
+    public void shutdown() {
+        running = false;
+        synchronized (queue) {
+            queue.clear();
+            pending.clear();
+        }
+        for (final Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                final LazyLoadable lazy = take();
+                try {
+                    load(lazy);
+                } finally {
+                    synchronized (queue) {
+                        pending.remove(lazy);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final RuntimeException e) {
+                // the details are loaded again when they are accessed
+                logger.warn("Prefetching details failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private LazyLoadable take() throws InterruptedException {
+        synchronized (queue) {
+            while (queue.isEmpty()) {
+                queue.wait();
+            }
+            return queue.removeFirst();
+        }
+    }
+
+    /**
+     * Loads the details of the given object now in the calling thread, first
+     * waiting for the rate limit unless they are cached. Lets other threads
+     * that load details in bulk share the rate limit of the prefetch threads.
+     *
+     * @param lazy
+     * @throws InterruptedException
+     *             if interrupted while waiting for the rate limit.
+     */
+    public void load(final LazyLoadable lazy) throws InterruptedException {
+        if (!lazy.isLoadPending()) {
+            // already loaded, for example when the user opened it
+            return;
+        }
+
+        if (detailCache == null || !detailCache.isCached(lazy)) {
+            rateLimiter.acquire();
+        }
+        lazy.ensureLoaded();
+    }
+
+    private static boolean isLoadPending(final Object object) {
+        return object instanceof LazyLoadable && ((LazyLoadable) object).isLoadPending();
+    }
+}
@@ -0,0 +1,356 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+
+/**
+ * Immutable in-memory full-text index of the titles, summaries, tracks, tags
+ * and speaker names of a schedule.
+ *
+ * Text is normalized to lower case terms without diacritics. Every query term
+ * is matched as a prefix so that the index can be used for search-as-you-type,
+ * and all query terms must match. Results are ranked by the fields the terms
+ * were found in, exact matches weighing more than prefix matches.
+ *
+ * Rebuilding the index for a changed schedule reuses the terms of the
+ * presentations whose text hasn't changed, see
+ * {@link #build(List, FullTextIndex)}.
+ */
+public class FullTextIndex {
+
+    private static final int TITLE_WEIGHT = 8;
+    private static final int TAG_WEIGHT = 6;
+    private static final int SPEAKER_WEIGHT = 5;
+    private static final int TRACK_WEIGHT = 3;
+    private static final int SUMMARY_WEIGHT = 1;
+
+    /** Exact matches count this many times more than prefix matches */
+    private static final int EXACT_MATCH_FACTOR = 2;
+
+    private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList("a", "an", "and", "are", "as",
+            "at", "be", "by", "for", "from", "how", "in", "is", "it", "of", "on", "or", "that", "the", "this", "to",
+            "we", "with", "you", "your"));
+
+    private final List<DevoxxPresentation> schedule;
+    private final Document[] documents;
+
+    /** Sorted terms */
+    private final String[] terms;
+
+    /**
+     * Postings of each term as pairs of schedule position and weight, sorted
+     * by the position.
+     */
+    private final int[][] postings;
+
+    private FullTextIndex(final List<DevoxxPresentation> schedule, final Document[] documents, final String[] terms,
+            final int[][] postings) {
+        this.schedule = schedule;
+        this.documents = documents;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds an index of the given schedule. Note that this loads the details
+     * of every presentation, which may lazy load them.
+     *
+     * @param schedule
+     * @param previous
+     *            index of a previous version of the schedule whose terms are
+     *            reused for unchanged presentations or null.
+     * @return
+     */
+    public static FullTextIndex build(final List<DevoxxPresentation> schedule, final FullTextIndex previous) {
+        final Map<Integer, Document> reusable = new HashMap<Integer, Document>();
+        if (previous != null) {
+            for (final Document document : previous.documents) {
+                if (document.id > 0) {
+                    reusable.put(document.id, document);
+                }
+            }
+        }
+
+        final Document[] documents = new Document[schedule.size()];
+        final Map<String, PostingList> postingLists = new HashMap<String, PostingList>();
+        for (int position = 0; position < documents.length; position++) {
+            final DevoxxPresentation presentation = schedule.get(position);
+            Document document = reusable.get(presentation.getId());
+            if (document == null || !document.hasSameText(presentation)) {
+                document = new Document(presentation);
+            }
+            documents[position] = document;
+
+            for (int i = 0; i < document.terms.length; i++) {
+                PostingList postingList = postingLists.get(document.terms[i]);
+                if (postingList == null) {
+                    postingList = new PostingList();
+                    postingLists.put(document.terms[i], postingList);
+                }
+                postingList.add(position, document.weights[i]);
+            }
+        }
+
+        final String[] terms = postingLists.keySet().toArray(new String[postingLists.size()]);
+        Arrays.sort(terms);
+        final int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            postings[i] = postingLists.get(terms[i]).toArray();
+        }
+        return new FullTextIndex(schedule, documents, terms, postings);
+    }
+
+    /**
+     * Returns the presentations matching all terms of the given query, the
+     * best matches first.
+     *
+     * @param query
+     * @return
+     */
+    public List<DevoxxPresentation> search(final String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most maxResults presentations matching all terms of the given
+     * query, the best matches first.
+     *
+     * @param query
+     * @param maxResults
+     * @return
+     */
+    public List<DevoxxPresentation> search(final String query, final int maxResults) {
+        final List<String> queryTerms = new ArrayList<String>();
+        tokenize(query, queryTerms, false);
+        for (int i = queryTerms.size() - 2; i >= 0; i--) {
+            // stop words aren't indexed, but the last term may still be the
+            // beginning of a longer word
+            if (STOP_WORDS.contains(queryTerms.get(i))) {
+                queryTerms.remove(i);
+            }
+        }
+        if (queryTerms.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+
+        final int[] scores = new int[documents.length];
+        final int[] matchedTerms = new int[documents.length];
+        final int[] termScores = new int[documents.length];
+        for (int q = 0; q < queryTerms.size(); q++) {
+            final String prefix = queryTerms.get(q);
+            Arrays.fill(termScores, 0);
+
+            // the terms starting with the prefix are next to each other
+            int i = Arrays.binarySearch(terms, prefix);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (; i < terms.length && terms[i].startsWith(prefix); i++) {
+                final int factor = terms[i].length() == prefix.length() ? EXACT_MATCH_FACTOR : 1;
+                final int[] termPostings = postings[i];
+                for (int p = 0; p < termPostings.length; p += 2) {
+                    final int score = termPostings[p + 1] * factor;
+                    if (score > termScores[termPostings[p]]) {
+                        termScores[termPostings[p]] = score;
+                    }
+                }
+            }
+
+            boolean anyMatch = false;
+            for (int position = 0; position < termScores.length; position++) {
+                if (termScores[position] > 0 && matchedTerms[position] == q) {
+                    matchedTerms[position]++;
+                    scores[position] += termScores[position];
+                    anyMatch = true;
+                }
+            }
+            if (!anyMatch) {
+                return Collections.emptyList();
+            }
+        }
+
+        final List<Integer> matches = new ArrayList<Integer>();
+        for (int position = 0; position < matchedTerms.length; position++) {
+            if (matchedTerms[position] == queryTerms.size()) {
+                matches.add(position);
+            }
+        }
+        Collections.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                final int scoreDiff = scores[second] - scores[first];
+                return scoreDiff != 0 ? scoreDiff : first - second;
+            }
+        });
+
+        final int resultSize = Math.min(maxResults, matches.size());
+        final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            result.add(schedule.get(matches.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the schedule this index was built from.
+     *
+     * @return
+     */
+    public List<DevoxxPresentation> getSchedule() {
+        return schedule;
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    private static List<String> getSpeakerNames(final DevoxxPresentation presentation) {
+        if (presentation.getSpeakers() == null) {
+            return Collections.emptyList();
+        }
+        final List<String> names = new ArrayList<String>(presentation.getSpeakers().size());
+        for (final DevoxxSpeaker speaker : presentation.getSpeakers()) {
+            names.add(speaker.getName());
+        }
+        return names;
+    }
+
+    private static boolean equal(final Object first, final Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    /**
+     * Splits the given text into normalized terms and adds them to the given
+     * list.
+     *
+     * @param text
+     * @param result
+     * @param skipStopWords
+     *            true to leave out common words that aren't worth indexing.
+     */
+    static void tokenize(final String text, final List<String> result, final boolean skipStopWords) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        final String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ENGLISH);
+        final StringBuilder term = new StringBuilder(16);
+        for (int i = 0; i <= normalized.length(); i++) {
+            final char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                // drop the diacritics separated by the normalization
+            } else if (term.length() > 0) {
+                final String value = term.toString();
+                if (!skipStopWords || !STOP_WORDS.contains(value)) {
+                    result.add(value);
+                }
+                term.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * The distinct terms of a presentation with their weights, and the text
+     * they were made of to tell whether they can be reused.
+     */
+    private static class Document {
+
+        private final int id;
+        private final String title;
+        private final String summary;
+        private final String track;
+        private final Set<String> tags;
+        private final List<String> speakerNames;
+        private final String[] terms;
+        private final int[] weights;
+
+        public Document(final DevoxxPresentation presentation) {
+            id = presentation.getId();
+            title = presentation.getTitle();
+            summary = presentation.getSummary();
+            track = presentation.getTrack();
+            tags = presentation.getTags() != null ? new HashSet<String>(presentation.getTags()) : null;
+            speakerNames = getSpeakerNames(presentation);
+
+            final Map<String, Integer> termWeights = new HashMap<String, Integer>();
+            addTerms(termWeights, title, TITLE_WEIGHT);
+            addTerms(termWeights, summary, SUMMARY_WEIGHT);
+            addTerms(termWeights, track, TRACK_WEIGHT);
+            if (tags != null) {
+                for (final String tag : tags) {
+                    addTerms(termWeights, tag, TAG_WEIGHT);
+                }
+            }
+            for (final String speakerName : speakerNames) {
+                addTerms(termWeights, speakerName, SPEAKER_WEIGHT);
+            }
+
+            terms = new String[termWeights.size()];
+            weights = new int[termWeights.size()];
+            int i = 0;
+            for (final Map.Entry<String, Integer> entry : termWeights.entrySet()) {
+                terms[i] = entry.getKey();
+                weights[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        /**
+         * Returns true if the given presentation has the same text as the one
+         * this document was made of.
+         */
+        public boolean hasSameText(final DevoxxPresentation presentation) {
+            return equal(title, presentation.getTitle()) && equal(summary, presentation.getSummary())
+                    && equal(track, presentation.getTrack()) && equal(tags, presentation.getTags())
+                    && speakerNames.equals(getSpeakerNames(presentation));
+        }
+
+        /**
+         * Adds the terms of the text keeping the highest weight of each term.
+         */
+        private static void addTerms(final Map<String, Integer> termWeights, final String text, final int weight) {
+            final List<String> textTerms = new ArrayList<String>();
+            tokenize(text, textTerms, true);
+            for (final String term : textTerms) {
+                final Integer existing = termWeights.get(term);
+                if (existing == null || existing < weight) {
+                    termWeights.put(term, weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable list of position and weight pairs.
+     */
+    private static class PostingList {
+
+        private int[] data = new int[4];
+        private int size;
+
+        public void add(final int position, final int weight) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = position;
+            data[size++] = weight;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
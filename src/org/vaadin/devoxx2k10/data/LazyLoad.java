@@ -7,7 +7,9 @@ import java.lang.annotation.Target;
 
 /**
  * Defines certain fields to be fetched lazily. May only be applied to getter
- * methods and the class must also provide a corresponding setter method.
+ * methods and the class must also provide a corresponding setter method. The
+ * getter must call {@link LazyLoadable#ensureLoaded()} before returning the
+ * value.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
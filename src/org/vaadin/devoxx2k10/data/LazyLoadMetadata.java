@@ -0,0 +1,137 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The {@link LazyLoad} annotated getters of a class resolved once with their
+ * setters and JSON paths, so that lazy loading doesn't need to reflect on the
+ * class every time.
+ */
+class LazyLoadMetadata {
+
+    private static final Logger logger = Logger.getLogger(LazyLoadMetadata.class);
+
+    private static final ConcurrentMap<Class<?>, LazyLoadMetadata> metadataByClass = new ConcurrentHashMap<Class<?>, LazyLoadMetadata>();
+
+    private final List<FieldBinding> bindings;
+
+    private LazyLoadMetadata(final Class<?> type) {
+        final List<FieldBinding> fieldBindings = new ArrayList<FieldBinding>();
+        for (final Method method : type.getMethods()) {
+            if (method.getName().startsWith("get") && method.isAnnotationPresent(LazyLoad.class)) {
+                try {
+                    final Method setter = type.getMethod("set" + method.getName().substring(3),
+                            method.getReturnType());
+                    fieldBindings.add(new FieldBinding(setter, method.getReturnType(), method.getAnnotation(
+                            LazyLoad.class).value()));
+                } catch (final NoSuchMethodException e) {
+                    logger.error("No matching setter found for getter: " + method.getName());
+                }
+            }
+        }
+        bindings = Collections.unmodifiableList(fieldBindings);
+    }
+
+    /**
+     * Returns the metadata of the given class, resolving it on the first call.
+     *
+     * @param type
+     * @return
+     */
+    public static LazyLoadMetadata forClass(final Class<?> type) {
+        LazyLoadMetadata metadata = metadataByClass.get(type);
+        if (metadata == null) {
+            metadata = new LazyLoadMetadata(type);
+            final LazyLoadMetadata existing = metadataByClass.putIfAbsent(type, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Sets the lazy loaded fields of the given object from the given JSON
+     * data.
+     *
+     * @param lazy
+     * @param jsonData
+     * @throws JSONException
+     */
+    public void setFields(final LazyLoadable lazy, final JSONObject jsonData) throws JSONException {
+        for (final FieldBinding binding : bindings) {
+            binding.setValue(lazy, jsonData);
+        }
+    }
+
+    /**
+     * A lazy loaded field: the setter, the type of the value and where to
+     * find it in the JSON data.
+     */
+    private static class FieldBinding {
+
+        private final Method setter;
+        private final Class<?> valueType;
+        private final String jsonField;
+        private final String jsonSubField;
+
+        public FieldBinding(final Method setter, final Class<?> valueType, final String jsonPath) {
+            this.setter = setter;
+            this.valueType = valueType;
+            if (jsonPath.contains("/")) {
+                jsonField = jsonPath.substring(0, jsonPath.indexOf("/"));
+                jsonSubField = jsonPath.substring(jsonPath.indexOf("/") + 1);
+            } else {
+                jsonField = jsonPath;
+                jsonSubField = null;
+            }
+        }
+
+        public void setValue(final LazyLoadable lazy, final JSONObject jsonData) throws JSONException {
+            Object value = null;
+            if (jsonData.has(jsonField)) {
+                if (valueType.equals(Set.class) && jsonSubField != null) {
+                    final JSONArray array = jsonData.getJSONArray(jsonField);
+                    final Set<String> result = new HashSet<String>(array.length());
+                    for (int i = 0; i < array.length(); i++) {
+                        final JSONObject jsonObj = (JSONObject) array.get(i);
+                        if (jsonObj.has(jsonSubField)) {
+                            result.add(jsonObj.getString(jsonSubField));
+                        }
+                    }
+                    value = result;
+                } else if (valueType.equals(int.class)) {
+                    value = jsonData.getInt(jsonField);
+                } else {
+                    // assume String
+                    value = jsonData.getString(jsonField);
+                }
+            } else {
+                logger.warn("No field found for name " + jsonField);
+            }
+
+            try {
+                setter.invoke(lazy, value);
+            } catch (final IllegalArgumentException e) {
+                logger.error("Illegal argument for setter " + setter.getName() + ": " + e.getMessage());
+            } catch (final IllegalAccessException e) {
+                logger.error("Illegal access to setter " + setter.getName() + ": " + e.getMessage());
+            } catch (final InvocationTargetException e) {
+                logger.error("Couldn't invoke setter " + setter.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -5,7 +5,7 @@ package org.vaadin.devoxx2k10.data;
  * LazyLoadable provides an URI for lazily loading more details via REST API.
  * 
  * @see LazyLoad
- * @see LazyLoadProxyFactory
+ * @see AbstractLazyLoadable
  */
 public interface LazyLoadable {
 
@@ -15,4 +15,16 @@ public interface LazyLoadable {
      * @return
      */
     String getLazyLoadingUri();
+
+    /**
+     * Returns true if the details of this object haven't been loaded yet.
+     * 
+     * @return
+     */
+    boolean isLoadPending();
+
+    /**
+     * Loads the details of this object now unless they are already loaded.
+     */
+    void ensureLoaded();
 }
@@ -0,0 +1,332 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.util.IntSet;
+
+/**
+ * Saves the favourites of MySchedule users in the background, so that the
+ * user doesn't have to wait for the REST API when attending a presentation.
+ *
+ * The favourites are saved a moment after they have changed, and changes made
+ * meanwhile are coalesced so that only the latest favourites of a user are
+ * saved. Saving is retried with an exponential backoff when the REST API can't
+ * be reached, counting the attempts across the coalesced changes. Rejected
+ * saves aren't retried but reported to the given {@link SaveFailureListener},
+ * as are saves failing after all attempts. The user given to
+ * {@link #save(RestApiFacade, MyScheduleUser, SaveFailureListener)} is never
+ * modified by the writer threads.
+ *
+ * When the writer is shut down, the favourites still waiting for their delay
+ * or for a retry are saved once right away.
+ */
+public class MyScheduleWriter {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final ScheduledExecutorService executor;
+    private final long delayInMs;
+    private final int maxAttempts;
+    private final long initialBackoffInMs;
+    private final long maxBackoffInMs;
+
+    /** Unsaved favourites by the e-mail of the user */
+    private final Map<String, PendingSave> pending = new HashMap<String, PendingSave>();
+
+    private boolean shutdown;
+
+    private long saveCount;
+    private long coalescedCount;
+    private long retryCount;
+    private long failureCount;
+    private long totalLatencyInMs;
+    private long maxLatencyInMs;
+
+    /**
+     * Creates and starts a new writer.
+     *
+     * @param threads
+     *            number of concurrent saves.
+     * @param delayInMs
+     *            time to wait for further changes before saving.
+     * @param maxAttempts
+     *            number of attempts to save before giving up.
+     * @param initialBackoffInMs
+     *            time to wait before the first retry, doubled for every
+     *            further retry.
+     * @param maxBackoffInMs
+     *            maximum time to wait between retries.
+     */
+    public MyScheduleWriter(final int threads, final long delayInMs, final int maxAttempts,
+            final long initialBackoffInMs, final long maxBackoffInMs) {
+        if (threads < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one thread and one attempt are required");
+        }
+        this.delayInMs = delayInMs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffInMs = initialBackoffInMs;
+        this.maxBackoffInMs = maxBackoffInMs;
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "myschedule-writer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues the current favourites of the given user for saving, replacing
+     * the favourites queued earlier but not saved yet.
+     *
+     * @param target
+     *            facade saving the favourites synchronously.
+     * @param user
+     * @param listener
+     *            notified in the writer thread if saving fails or null.
+     * @throws IllegalStateException
+     *             if the writer has been shut down.
+     */
+    public void save(final RestApiFacade target, final MyScheduleUser user, final SaveFailureListener listener) {
+        if (user.getActivationCode() == null || user.getEmail() == null) {
+            throw new IllegalArgumentException("Activation code and e-mail must be set for the user.");
+        }
+        if (user.getFavourites() == null) {
+            throw new IllegalArgumentException("User must have favourites to save.");
+        }
+
+        final MyScheduleUser snapshot = new MyScheduleUser(user.getEmail(), user.getActivationCode());
+        snapshot.setFavourites(new IntSet(user.getFavourites()));
+
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("MyScheduleWriter has been shut down");
+            }
+            PendingSave save = pending.get(user.getEmail());
+            if (save == null) {
+                save = new PendingSave(System.currentTimeMillis());
+                pending.put(user.getEmail(), save);
+                schedule(save, delayInMs);
+            } else {
+                // saved by the flush already scheduled
+                coalescedCount++;
+            }
+            save.target = target;
+            save.user = user;
+            save.snapshot = snapshot;
+            save.listener = listener;
+        }
+    }
+
+    /**
+     * Returns the number of users whose favourites are waiting to be saved.
+     *
+     * @return
+     */
+    public synchronized int getQueueSize() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of saves, retries and failures and the time from a
+     * change to it being saved, for monitoring.
+     *
+     * @return
+     */
+    @Override
+    public synchronized String toString() {
+        return "queued=" + pending.size() + ", saves=" + saveCount + ", coalesced=" + coalescedCount + ", retries="
+                + retryCount + ", failures=" + failureCount + ", avgLatencyMs="
+                + (saveCount > 0 ? totalLatencyInMs / saveCount : 0) + ", maxLatencyMs=" + maxLatencyInMs;
+    }
+
+    /**
+     * Stops accepting new saves and saves the pending favourites once without
+     * waiting for their delay or retry backoff, then stops the writer threads.
+     * Saves that fail now are not retried but reported as usual.
+     *
+     * @param timeoutInMs
+     *            maximum time to wait for the pending saves.
+     */
+    public void shutdown(final long timeoutInMs) {
+        synchronized (this) {
+            shutdown = true;
+            for (final PendingSave save : pending.values()) {
+                // a save already running completes on its own
+                if (save.scheduled.cancel(false)) {
+                    schedule(save, 0);
+                }
+            }
+            if (!pending.isEmpty()) {
+                logger.info("Saving the favourites of " + pending.size() + " users before shutting down.");
+            }
+            executor.shutdown();
+        }
+
+        try {
+            if (!executor.awaitTermination(timeoutInMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (final String email : pending.keySet()) {
+                logger.error("Favourites of user " + email + " not saved at shutdown.");
+            }
+            pending.clear();
+        }
+    }
+
+    private void schedule(final PendingSave save, final long delay) {
+        save.scheduled = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush(save);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Saves the latest favourites of a user. Only one flush of a user is
+     * scheduled at a time.
+     */
+    private void flush(final PendingSave save) {
+        final RestApiFacade target;
+        final MyScheduleUser snapshot;
+        synchronized (this) {
+            target = save.target;
+            snapshot = save.snapshot;
+        }
+
+        boolean saveAgain = false;
+        try {
+            target.saveMySchedule(snapshot);
+
+            synchronized (this) {
+                if (save.snapshot != snapshot) {
+                    // changed while saving, save the latest favourites too,
+                    // right away if no more tasks can be scheduled
+                    save.attempts = 0;
+                    if (!shutdown) {
+                        schedule(save, delayInMs);
+                        return;
+                    }
+                    saveAgain = true;
+                } else {
+                    pending.remove(snapshot.getEmail());
+                    final long latency = System.currentTimeMillis() - save.queuedTime;
+                    saveCount++;
+                    totalLatencyInMs += latency;
+                    maxLatencyInMs = Math.max(maxLatencyInMs, latency);
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Saved " + snapshot.getFavourites().size() + " favourites for user "
+                        + snapshot.getEmail());
+            }
+        } catch (final RestApiException e) {
+            if (snapshot.getActivationCode() == null) {
+                // the activation code was rejected, retrying won't help
+                fail(save, snapshot, e);
+            } else {
+                retry(save, snapshot, e);
+            }
+        } catch (final RuntimeException e) {
+            retry(save, snapshot, new RestApiException("Saving MySchedule failed. Please try again later.", e));
+        }
+
+        if (saveAgain) {
+            flush(save);
+        }
+    }
+
+    private void retry(final PendingSave save, final MyScheduleUser snapshot, final RestApiException e) {
+        final long backoff;
+        synchronized (this) {
+            save.attempts++;
+            if (save.attempts >= maxAttempts || shutdown) {
+                backoff = -1;
+            } else {
+                retryCount++;
+                backoff = Math.min(initialBackoffInMs << (save.attempts - 1), maxBackoffInMs);
+                schedule(save, backoff);
+            }
+        }
+
+        if (backoff < 0) {
+            fail(save, snapshot, e);
+        } else {
+            logger.warn("Saving favourites for user " + snapshot.getEmail() + " failed, retrying in " + backoff
+                    + " ms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives up saving, dropping also the changes made meanwhile.
+     */
+    private void fail(final PendingSave save, final MyScheduleUser snapshot, final RestApiException e) {
+        final SaveFailureListener listener;
+        final MyScheduleUser user;
+        synchronized (this) {
+            failureCount++;
+            listener = save.listener;
+            user = save.user;
+            pending.remove(snapshot.getEmail());
+        }
+
+        logger.error("Saving favourites for user " + snapshot.getEmail() + " failed: " + e.getMessage());
+        if (listener != null) {
+            listener.saveFailed(user, e, snapshot.getActivationCode() == null);
+        }
+    }
+
+    /**
+     * The latest unsaved favourites of a user.
+     */
+    private static class PendingSave {
+
+        private final long queuedTime;
+        private RestApiFacade target;
+        private MyScheduleUser user;
+        private MyScheduleUser snapshot;
+        private SaveFailureListener listener;
+        private int attempts;
+        private ScheduledFuture<?> scheduled;
+
+        public PendingSave(final long queuedTime) {
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    public static interface SaveFailureListener {
+
+        /**
+         * Called in a writer thread when the favourites of the given user
+         * couldn't be saved. The user must be modified only while holding the
+         * lock of its session, for example in the next request.
+         *
+         * @param user
+         * @param e
+         *            the cause with a message that can be shown to the user.
+         * @param codeRejected
+         *            true if the activation code of the user was rejected,
+         *            in which case the user must sign in again.
+         */
+        void saveFailed(MyScheduleUser user, RestApiException e, boolean codeRejected);
+    }
+}
@@ -3,6 +3,7 @@ package org.vaadin.devoxx2k10.data;
 import java.util.List;
 
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
 
 /**
@@ -29,6 +30,17 @@ public interface RestApiFacade {
      */
     void saveMySchedule(MyScheduleUser user) throws RestApiException;
 
+    /**
+     * Saves the current favourites of the given user, possibly in the
+     * background. Failures are reported to the given listener, which may be
+     * called from another thread.
+     * 
+     * @param user
+     * @param listener
+     *            notified if saving fails or null.
+     */
+    void saveMyScheduleLater(MyScheduleUser user, MyScheduleWriter.SaveFailureListener listener);
+
     /**
      * Returns true if the given user's e-mail and activation code are valid for
      * a user of MySchedule feature.
@@ -46,6 +58,17 @@ public interface RestApiFacade {
      */
     void getScheduleForUser(MyScheduleUser user) throws RestApiException;
 
+    /**
+     * Signs in the given user of the MySchedule feature, checking the e-mail
+     * and activation code and retrieving the user's favourites.
+     * 
+     * @param user
+     * @return true if the user was signed in, false if the activation code is
+     *         not valid.
+     * @throws RestApiException
+     */
+    boolean signIn(MyScheduleUser user) throws RestApiException;
+
     /**
      * 
      * @return
@@ -58,4 +81,42 @@ public interface RestApiFacade {
      * @return List of DevoxxPresentations containing the given tag.
      */
     List<DevoxxPresentation> search(String tag);
+
+    /**
+     * Full-text search for {@link DevoxxPresentation}s by their titles,
+     * summaries, tracks, tags and speaker names. The words of the query may be
+     * incomplete, which allows searching as the user types.
+     * 
+     * @param query
+     * @return List of DevoxxPresentations matching all words of the query, the
+     *         best matches first.
+     */
+    List<DevoxxPresentation> searchText(String query);
+
+    /**
+     * Returns the {@link DevoxxSpeaker} with the given id from the full
+     * schedule.
+     * 
+     * @param speakerId
+     * @return the speaker or null if the speaker has no presentations.
+     */
+    DevoxxSpeaker getSpeaker(int speakerId);
+
+    /**
+     * Returns the {@link DevoxxPresentation}s of the speaker with the given id
+     * in the schedule order.
+     * 
+     * @param speakerId
+     * @return
+     */
+    List<DevoxxPresentation> getTalksBySpeaker(int speakerId);
+
+    /**
+     * Hints that the details of the given {@link DevoxxPresentation}s and
+     * their speakers are likely to be needed soon, so that they can be loaded
+     * in advance.
+     * 
+     * @param presentations
+     */
+    void prefetchDetails(List<DevoxxPresentation> presentations);
 }
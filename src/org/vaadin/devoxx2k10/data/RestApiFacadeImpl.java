@@ -1,24 +1,23 @@
 package org.vaadin.devoxx2k10.data;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
@@ -28,15 +27,20 @@ import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationComparator;
 import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationImpl;
 import org.vaadin.devoxx2k10.data.domain.impl.DevoxxSpeakerImpl;
 import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpClientFactory;
 import org.vaadin.devoxx2k10.data.http.HttpResponse;
-import org.vaadin.devoxx2k10.data.http.impl.HttpClientImpl;
+import org.vaadin.devoxx2k10.data.json.JsonStreamReader;
+import org.vaadin.devoxx2k10.util.DateUtil;
+import org.vaadin.devoxx2k10.util.IntSet;
 
 /**
  * Facade for the Devoxx REST API.
  * 
  * You can inject your own HttpClient implementation by using the constructor
- * taking it as a parameter or you can use the default implementation by using
- * the no-arg constructor.
+ * taking it as a parameter or you can use the configured implementation by
+ * using the no-arg constructor.
+ * 
+ * @see HttpClientFactory
  */
 public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
 
@@ -45,8 +49,6 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
     private final HttpClient httpClient;
 
     private static final String EVENT_ID = Configuration.getProperty("event.id");
-    
-    private static final String DEVOXX_JSON_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
 
     public static final String REST_API_BASE_URL = Configuration.getProperty("rest.base.url");
 
@@ -60,9 +62,15 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
 
     private static final String UTF_8 = "utf-8";
 
+    /**
+     * The latest schedule response of this instance (for its validators) and
+     * the presentations parsed from it, which lazy load their details through
+     * this instance.
+     */
+    private volatile ParsedSchedule lastParsedSchedule;
+
     public RestApiFacadeImpl() {
-        // this(new OfflineHttpClientMock("20101112110640"));
-        this(new HttpClientImpl());
+        this(HttpClientFactory.getHttpClient());
     }
 
     public RestApiFacadeImpl(final HttpClient httpClient) {
@@ -72,6 +80,15 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         this.httpClient = httpClient;
     }
 
+    /**
+     * Returns the HttpClient of this facade.
+     * 
+     * @return
+     */
+    protected HttpClient getHttpClient() {
+        return httpClient;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -113,10 +130,11 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         try {
             final StringBuilder params = new StringBuilder(100);
             params.append("code=").append(URLEncoder.encode(user.getActivationCode(), UTF_8));
-            for (final Integer favouriteId : user.getFavourites()) {
+            final IntSet favourites = user.getFavourites();
+            for (int i = 0; i < favourites.size(); i++) {
                 params.append('&');
                 params.append("favorites=");
-                params.append(favouriteId);
+                params.append(favourites.get(i));
             }
 
             final int response = httpClient.post(SCHEDULE_URL + "/" + user.getEmail(), params.toString());
@@ -136,6 +154,22 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation saves the favourites before returning.
+     */
+    @Override
+    public void saveMyScheduleLater(final MyScheduleUser user, final MyScheduleWriter.SaveFailureListener listener) {
+        try {
+            saveMySchedule(user);
+        } catch (final RestApiException e) {
+            if (listener != null) {
+                listener.saveFailed(user, e, user.getActivationCode() == null);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -172,10 +206,9 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
 
                 if (response.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT) {
                     // user has no favourites yet
-                    user.setFavourites(new HashSet<Integer>());
+                    user.setFavourites(new IntSet());
                 } else if (response.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    // parse the response
-                    user.setFavourites(getScheduleIds(httpClient.get(SCHEDULE_URL + "/" + user.getEmail()).getResponse()));
+                    user.setFavourites(getScheduleIds(response.getResponse()));
                 }
 
                 if (logger.isDebugEnabled()) {
@@ -189,13 +222,50 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean signIn(final MyScheduleUser user) throws RestApiException {
+        if (!isValidUser(user)) {
+            return false;
+        }
+        getScheduleForUser(user);
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<DevoxxPresentation> getFullSchedule() {
         try {
-            return getScheduleData(httpClient.get(SCHEDULE_URL).getResponse());
+            final ParsedSchedule previous = lastParsedSchedule;
+            final HttpResponse response = httpClient.openStream(SCHEDULE_URL, previous != null ? previous.response
+                    : null);
+
+            final List<DevoxxPresentation> schedule;
+            try {
+                if (response.isNotModified() && previous != null) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Schedule not modified, reusing the " + previous.presentations.size()
+                                + " already parsed presentations.");
+                    }
+                    return previous.presentations;
+                }
+
+                // parse directly from the response stream
+                schedule = getScheduleData(response.getReader());
+            } finally {
+                response.close();
+            }
+
+            if (response.hasValidators()) {
+                final ParsedSchedule parsed = new ParsedSchedule(response, schedule);
+                lastParsedSchedule = parsed;
+                return parsed.presentations;
+            }
+            return Collections.unmodifiableList(schedule);
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
@@ -208,8 +278,8 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
     public List<DevoxxPresentation> search(final String tag) {
         String searchJson;
         try {
-            searchJson = httpClient.get(SEARCH_URL + "?tags=" + tag).getResponse();
-            final Set<Integer> ids = getScheduleIds(searchJson);
+            searchJson = httpClient.get(SEARCH_URL + "?tags=" + URLEncoder.encode(tag, UTF_8)).getResponse();
+            final IntSet ids = getScheduleIds(searchJson);
             final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>(ids.size());
 
             // Use the full schedule to reuse DevoxxPresentation instances
@@ -225,8 +295,49 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         }
     }
 
-    protected Set<Integer> getScheduleIds(final String scheduleJson) {
-        final Set<Integer> result = new HashSet<Integer>();
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation indexes the full schedule on every call.
+     */
+    @Override
+    public List<DevoxxPresentation> searchText(final String query) {
+        return FullTextIndex.build(getFullSchedule(), null).search(query);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation indexes the full schedule on every call.
+     */
+    @Override
+    public DevoxxSpeaker getSpeaker(final int speakerId) {
+        return SpeakerIndex.build(getFullSchedule()).getSpeaker(speakerId);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation indexes the full schedule on every call.
+     */
+    @Override
+    public List<DevoxxPresentation> getTalksBySpeaker(final int speakerId) {
+        return SpeakerIndex.build(getFullSchedule()).getTalks(speakerId);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * This implementation does nothing, the details are loaded when they are
+     * accessed.
+     */
+    @Override
+    public void prefetchDetails(final List<DevoxxPresentation> presentations) {
+        // loaded lazily on access
+    }
+
+    protected IntSet getScheduleIds(final String scheduleJson) {
+        final IntSet result = new IntSet();
         try {
             if (scheduleJson != null && scheduleJson.length() > 0) {
                 final JSONArray jsonArray = new JSONArray(scheduleJson);
@@ -244,84 +355,208 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         return result;
     }
 
+    /**
+     * Parses the given schedule JSON without loading anything or changing the
+     * schedule of this facade. The details of the presentations and speakers
+     * are lazy loaded through this facade.
+     * 
+     * @param scheduleJson
+     * @return the schedule sorted.
+     */
+    public List<DevoxxPresentation> parseSchedule(final Reader scheduleJson) {
+        return getScheduleData(scheduleJson);
+    }
+
     protected List<DevoxxPresentation> getScheduleData(final String scheduleJson) {
+        return getScheduleData(scheduleJson != null ? new StringReader(scheduleJson) : null);
+    }
+
+    /**
+     * Parses the schedule directly from the given stream of JSON data without
+     * building an intermediate JSON tree and returns it sorted.
+     * 
+     * @param scheduleJson
+     * @return
+     */
+    protected List<DevoxxPresentation> getScheduleData(final Reader scheduleJson) {
         final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>();
+        final Map<Integer, DevoxxSpeaker> speakers = new HashMap<Integer, DevoxxSpeaker>();
         try {
-            if (scheduleJson != null && scheduleJson.length() > 0) {
-                final JSONArray jsonArray = new JSONArray(scheduleJson);
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    final JSONObject json = (JSONObject) jsonArray.get(i);
-                    result.add(parsePresentation(json));
+            final JsonStreamReader reader = scheduleJson != null ? new JsonStreamReader(scheduleJson) : null;
+            if (reader != null && reader.hasMoreData()) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    result.add(parsePresentation(reader, speakers));
                 }
+                reader.endArray();
             }
         } catch (final JSONException e) {
             throw new RuntimeException(e);
         }
 
-        // sort the schedule
-        Collections.sort(result, new DevoxxPresentationComparator());
+        sortSchedule(result);
 
         return result;
     }
 
     /**
-     * Parses a DevoxxPresentation object from the given JSONObject.
+     * Sorts the given schedule unless it's already in order, which takes a
+     * single pass over the precomputed sort keys.
+     * 
+     * @param schedule
+     */
+    private void sortSchedule(final List<DevoxxPresentation> schedule) {
+        if (!DevoxxPresentationComparator.isSorted(schedule)) {
+            Collections.sort(schedule, new DevoxxPresentationComparator());
+        }
+    }
+
+    /**
+     * Parses a DevoxxPresentation object from the next JSON object of the
+     * given reader.
      * 
-     * @param json
+     * @param reader
+     * @param speakerRegistry
+     *            the speakers already parsed from the schedule by their ids.
      * @return
      * @throws JSONException
      */
-    private DevoxxPresentation parsePresentation(final JSONObject json) throws JSONException {
-        final DateFormat df = new SimpleDateFormat(DEVOXX_JSON_DATE_PATTERN);
+    private DevoxxPresentation parsePresentation(final JsonStreamReader reader,
+            final Map<Integer, DevoxxSpeaker> speakerRegistry) throws JSONException {
+        String kind = null;
+        String fromTime = null;
+        String toTime = null;
+        String room = null;
+        Boolean partnerSlot = null;
+        String code = null;
+        String type = null;
+        String presentationUri = null;
+        String title = null;
+        final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (name.equals("kind")) {
+                kind = reader.nextString();
+            } else if (name.equals("fromTime")) {
+                fromTime = reader.nextString();
+            } else if (name.equals("toTime")) {
+                toTime = reader.nextString();
+            } else if (name.equals("room")) {
+                room = reader.nextString();
+            } else if (name.equals("partnerSlot")) {
+                partnerSlot = reader.nextBoolean();
+            } else if (name.equals("code")) {
+                code = reader.nextString();
+            } else if (name.equals("type")) {
+                type = reader.nextString();
+            } else if (name.equals("presentationUri")) {
+                presentationUri = reader.nextString();
+            } else if (name.equals("title")) {
+                title = reader.nextString();
+            } else if (name.equals("speakers")) {
+                parseSpeakers(reader, speakers, speakerRegistry);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
+        return createPresentation(required(kind, "kind"), required(fromTime, "fromTime"), required(toTime, "toTime"),
+                required(room, "room"), required(partnerSlot, "partnerSlot"), required(code, "code"),
+                required(type, "type"), presentationUri, title, speakers);
+    }
+
+    private void parseSpeakers(final JsonStreamReader reader, final List<DevoxxSpeaker> speakers,
+            final Map<Integer, DevoxxSpeaker> speakerRegistry) throws JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String speakerUri = null;
+            String speakerName = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (name.equals("speakerUri")) {
+                    speakerUri = reader.nextString();
+                } else if (name.equals("speaker")) {
+                    speakerName = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            speakers.add(getSpeaker(required(speakerUri, "speakerUri"), required(speakerName, "speaker"),
+                    speakerRegistry));
+        }
+        reader.endArray();
+    }
+
+    private static <T> T required(final T value, final String name) throws JSONException {
+        if (value == null) {
+            throw new JSONException("JSONObject[\"" + name + "\"] not found.");
+        }
+        return value;
+    }
+
+    /**
+     * Returns the speaker with the id of the given URI from the registry,
+     * creating and registering it on the first reference. This way each
+     * speaker of a schedule is a single instance whose details are loaded only
+     * once, however many presentations the speaker gives.
+     */
+    protected DevoxxSpeaker getSpeaker(final String speakerUri, final String speakerName,
+            final Map<Integer, DevoxxSpeaker> speakerRegistry) {
+        final int speakerId = Integer.valueOf(speakerUri.substring(speakerUri.lastIndexOf("/") + 1));
+
+        DevoxxSpeaker speaker = speakerRegistry.get(speakerId);
+        if (speaker == null) {
+            final DevoxxSpeakerImpl newSpeaker = new DevoxxSpeakerImpl(speakerId, speakerName, speakerUri);
+            newSpeaker.setLazyLoadProvider(this);
+            speakerRegistry.put(speakerId, newSpeaker);
+            speaker = newSpeaker;
+        }
+        return speaker;
+    }
+
+    /**
+     * Creates a presentation from the values parsed from the schedule,
+     * loading its details through this facade.
+     */
+    protected DevoxxPresentation createPresentation(final String kindName, final String fromTimeString,
+            final String toTimeString, final String room, final boolean partnerSlot, final String code,
+            final String type, final String presentationUri, final String jsonTitle, final List<DevoxxSpeaker> speakers)
+            throws JSONException {
         try {
-            final DevoxxPresentationKind kind = DevoxxPresentationKind.valueOf(json.getString("kind").toUpperCase()
-                    .replaceAll(" ", "_"));
+            final DevoxxPresentationKind kind = DevoxxPresentationKind.valueOf(kindName.toUpperCase().replaceAll(" ",
+                    "_"));
 
             int id = 0;
-            final Date fromTime = df.parse(json.getString("fromTime"));
-            final Date toTime = df.parse(json.getString("toTime"));
-            final String room = json.getString("room");
-            final boolean partnerSlot = json.getBoolean("partnerSlot");
-            final String code = json.getString("code");
-            final String type = json.getString("type");
-
-            String presentationUri = null;
-            if (json.has("presentationUri")) {
-                presentationUri = json.getString("presentationUri");
+            final Date fromTime = DateUtil.parseJsonDate(fromTimeString);
+            final Date toTime = DateUtil.parseJsonDate(toTimeString);
 
+            if (presentationUri != null) {
                 // parse the id from the presentationUri
                 id = Integer.valueOf(presentationUri.substring(presentationUri.lastIndexOf("/") + 1));
             }
 
             String title = "TBA";
             if (kind.isSpeak()) {
-                if (json.has("title")) {
-                    title = json.getString("title");
+                if (jsonTitle != null) {
+                    title = jsonTitle;
                 }
             } else {
                 title = code;
             }
 
-            final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
-            if (json.has("speakers")) {
-                final JSONArray speakersJson = json.getJSONArray("speakers");
-                for (int i = 0; i < speakersJson.length(); i++) {
-                    final String speakerUri = ((JSONObject) speakersJson.get(i)).getString("speakerUri");
-                    final String speakerName = ((JSONObject) speakersJson.get(i)).getString("speaker");
-                    final int speakerId = Integer.valueOf(speakerUri.substring(speakerUri.lastIndexOf("/") + 1));
-
-                    // wrap the speaker inside a lazy loading proxy
-                    speakers.add(LazyLoadProxyFactory.getProxy(new DevoxxSpeakerImpl(speakerId, speakerName, speakerUri),
-                            this));
-                }
-            }
-
             final DevoxxPresentationImpl event = new DevoxxPresentationImpl(id, fromTime, toTime, code, type, kind, title,
                     speakers, room, partnerSlot, presentationUri);
 
-            // wrap the presentation inside a lazy loading proxy
-            return LazyLoadProxyFactory.getProxy(event, this);
+            // the details are loaded on the first call to a lazy loaded getter
+            event.setLazyLoadProvider(this);
+            return event;
         } catch (final ParseException e) {
             throw new JSONException(e);
         }
@@ -337,76 +572,54 @@ public class RestApiFacadeImpl implements RestApiFacade, LazyLoadProvider {
         }
 
         try {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Lazy loading object details " + lazy.getLazyLoadingUri());
+            final JSONObject jsonData = loadDetails(lazy);
+            if (jsonData != null) {
+                LazyLoadMetadata.forClass(lazy.getClass()).setFields(lazy, jsonData);
             }
+        } catch (final JSONException e) {
+            throw new RuntimeException(e);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            HttpResponse response = httpClient.get(lazy.getLazyLoadingUri());
+    /**
+     * Loads the JSON details of the given object from its lazy loading URI.
+     * The returned object must not be modified.
+     * 
+     * @param lazy
+     * @return the details or null if they weren't found.
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected JSONObject loadDetails(final LazyLoadable lazy) throws IOException, JSONException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Lazy loading object details " + lazy.getLazyLoadingUri());
+        }
+
+        final HttpResponse response = httpClient.openStream(lazy.getLazyLoadingUri(), null);
+        try {
             if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
                 // 404 error (not found)
                 logger.warn("URL " + lazy.getLazyLoadingUri() + " returned with error code "
                         + response.getResponseCode());
-                return;
+                return null;
             }
 
-            final JSONObject jsonData = new JSONObject(response.getResponse());
-
-            for (final Method method : lazy.getClass().getMethods()) {
-                if (method.getName().startsWith("get") && method.isAnnotationPresent(LazyLoad.class)) {
-
-                    final Class<?> returnType = method.getReturnType();
-                    Method setterMethod = null;
-
-                    try {
-                        // find a setter for the value
-                        setterMethod = lazy.getClass().getMethod("set" + method.getName().substring(3), returnType);
-                        String jsonField = method.getAnnotation(LazyLoad.class).value();
-                        String jsonSubField = null;
-                        if (jsonField.contains("/")) {
-                            final String temp = jsonField;
-                            jsonField = temp.substring(0, temp.indexOf("/"));
-                            jsonSubField = temp.substring(temp.indexOf("/") + 1);
-                        }
-
-                        Object value = null;
-                        if (jsonData.has(jsonField)) {
-                            if (returnType.equals(Set.class) && jsonSubField != null) {
-                                final JSONArray array = jsonData.getJSONArray(jsonField);
-                                final Set<String> result = new HashSet<String>(array.length());
-                                for (int i = 0; i < array.length(); i++) {
-                                    final JSONObject jsonObj = (JSONObject) array.get(i);
-                                    if (jsonObj.has(jsonSubField)) {
-                                        result.add(jsonObj.getString(jsonSubField));
-                                    }
-                                }
-                                value = result;
-                            } else if (returnType.equals(int.class)) {
-                                value = jsonData.getInt(jsonField);
-                            } else {
-                                // assume String
-                                value = jsonData.getString(jsonField);
-                            }
-                        } else {
-                            logger.warn("No field found for name " + jsonField);
-                        }
-
-                        // call the setter
-                        setterMethod.invoke(lazy, value);
-                    } catch (final NoSuchMethodException e) {
-                        logger.error("No matching setter found for getter: " + method.getName());
-                    } catch (final IllegalArgumentException e) {
-                        logger.error("Illegal argument for setter " + setterMethod.getName() + ": " + e.getMessage());
-                    } catch (final IllegalAccessException e) {
-                        logger.error("Illegal access to setter " + setterMethod.getName() + ": " + e.getMessage());
-                    } catch (final InvocationTargetException e) {
-                        logger.error("Couldn't invoke setter " + setterMethod.getName() + ": " + e.getMessage());
-                    }
-                }
-            }
-        } catch (final JSONException e) {
-            throw new RuntimeException(e);
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+            return new JSONObject(new JSONTokener(response.getReader()));
+        } finally {
+            response.close();
+        }
+    }
+
+    private static class ParsedSchedule {
+
+        private final HttpResponse response;
+        private final List<DevoxxPresentation> presentations;
+
+        public ParsedSchedule(final HttpResponse response, final List<DevoxxPresentation> presentations) {
+            this.response = response;
+            this.presentations = Collections.unmodifiableList(presentations);
         }
     }
 }
@@ -0,0 +1,471 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.util.ExpiringLruCache;
+
+/**
+ * The schedule and the remote search results shared by all sessions of
+ * {@link CachingRestApiFacade}, together with the background thread that
+ * refreshes them and the indexes built for the schedule.
+ *
+ * Building the indexes loads the details of every presentation, so they are
+ * built in a thread of their own and never delay the refresh. The details are
+ * loaded through the prefetcher to keep within its rate limit. The tag index
+ * is built first, so that it's ready before the full-text index.
+ *
+ * Concurrent requests for the same uncached data are coalesced: the first
+ * caller loads the data while the others wait for the same Future. The
+ * loaders given for the data are kept to refresh it, so they must not refer
+ * to the facade of a session.
+ *
+ * The background threads are started on first use and must be stopped with
+ * {@link #shutdown()}.
+ */
+class ScheduleCache {
+
+    private static final String SCHEDULE_KEY = "schedule";
+
+    private static final Logger logger = Logger.getLogger(ScheduleCache.class);
+
+    private final long expirationInMs;
+    private final long refreshInMs;
+
+    private final ExpiringLruCache<String, Future<CachedResult>> scheduleCache = new ExpiringLruCache<String, Future<CachedResult>>(
+            0, 0);
+
+    private final ExpiringLruCache<String, Future<CachedResult>> searchCache;
+
+    private ScheduledExecutorService refreshExecutor;
+
+    private ExecutorService indexExecutor;
+
+    private volatile TagIndex tagIndex;
+
+    private volatile FullTextIndex fullTextIndex;
+
+    /** The schedule that is indexed or being indexed */
+    private final AtomicReference<List<DevoxxPresentation>> indexedSchedule = new AtomicReference<List<DevoxxPresentation>>();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param expirationInMs
+     *            time after which data that hasn't been requested is dropped.
+     * @param refreshInMs
+     *            interval of refreshing the data in the background or 0 to
+     *            let the data expire <code>expirationInMs</code> after it was
+     *            loaded.
+     * @param searchCacheMaxSize
+     *            maximum number of cached search results.
+     * @param searchCacheTimeToLiveInMs
+     *            maximum time to cache a search result.
+     */
+    public ScheduleCache(final long expirationInMs, final long refreshInMs, final int searchCacheMaxSize,
+            final long searchCacheTimeToLiveInMs) {
+        this.expirationInMs = expirationInMs;
+        this.refreshInMs = refreshInMs;
+        searchCache = new ExpiringLruCache<String, Future<CachedResult>>(searchCacheMaxSize,
+                searchCacheTimeToLiveInMs);
+    }
+
+    /**
+     * Returns the cached schedule, loading it with the given loader if it's not
+     * cached yet.
+     *
+     * @param loader
+     * @return
+     */
+    public List<DevoxxPresentation> getSchedule(final Callable<List<DevoxxPresentation>> loader) {
+        return getCached(scheduleCache, SCHEDULE_KEY, loader);
+    }
+
+    /**
+     * Returns the cached search result of the given tag, loading it with the
+     * given loader if it's not cached yet.
+     *
+     * @param tag
+     * @param loader
+     * @return
+     */
+    public List<DevoxxPresentation> getSearchResult(final String tag, final Callable<List<DevoxxPresentation>> loader) {
+        return getCached(searchCache, tag, loader);
+    }
+
+    /**
+     * Returns the tag index of the current schedule or null if it hasn't been
+     * built yet.
+     *
+     * @return
+     */
+    public TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Returns the full-text index of the current schedule or null if it hasn't
+     * been built yet.
+     *
+     * @return
+     */
+    public FullTextIndex getFullTextIndex() {
+        return fullTextIndex;
+    }
+
+    /**
+     * Returns the statistics of the search result cache, such as its size and
+     * hit count, for monitoring.
+     *
+     * @return
+     */
+    public String getSearchCacheStatistics() {
+        return searchCache.toString();
+    }
+
+    /**
+     * Clears all cached data and indexes. Loads already in progress still
+     * complete for the callers waiting for them.
+     */
+    public void clear() {
+        scheduleCache.clear();
+        searchCache.clear();
+        indexedSchedule.set(null);
+        tagIndex = null;
+        fullTextIndex = null;
+    }
+
+    /**
+     * Stops the background threads. The threads are started again if the cache
+     * is used after this.
+     */
+    public synchronized void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            refreshExecutor = null;
+            if (logger.isInfoEnabled()) {
+                logger.info("Stopped the schedule cache refresh thread.");
+            }
+        }
+        if (indexExecutor != null) {
+            indexExecutor.shutdownNow();
+            indexExecutor = null;
+        }
+    }
+
+    /**
+     * Returns the executor running the background tasks, starting it and the
+     * periodic refresh if they aren't running yet.
+     */
+    private synchronized ScheduledExecutorService getRefreshExecutor() {
+        if (refreshExecutor != null) {
+            return refreshExecutor;
+        }
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "schedule-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final long interval = refreshInMs > 0 ? refreshInMs : expirationInMs;
+        refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (final RuntimeException e) {
+                    // don't let an exception cancel the scheduled task
+                    logger.error("Refreshing the schedule cache failed.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return refreshExecutor;
+    }
+
+    /**
+     * Returns the executor building the indexes, starting it if needed.
+     */
+    private synchronized ExecutorService getIndexExecutor() {
+        if (indexExecutor == null) {
+            indexExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "schedule-indexer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return indexExecutor;
+    }
+
+    /**
+     * Builds new tag and full-text indexes for the given schedule in the
+     * background unless it's already indexed. The current indexes are used
+     * until the new ones are ready.
+     *
+     * @param schedule
+     * @param prefetcher
+     *            prefetcher to load the details of a new schedule or null.
+     */
+    public void index(final List<DevoxxPresentation> schedule, final DetailPrefetcher prefetcher) {
+        final List<DevoxxPresentation> previous = indexedSchedule.get();
+        if (previous == schedule || !indexedSchedule.compareAndSet(previous, schedule)) {
+            return;
+        }
+
+        // load the details concurrently, the indexing below waits for the
+        // ones being loaded and loads the rest within the same rate limit
+        if (prefetcher != null) {
+            prefetcher.prefetch(schedule, false);
+        }
+
+        try {
+            final ExecutorService executor = getIndexExecutor();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final long start = System.currentTimeMillis();
+                        if (prefetcher != null) {
+                            loadDetails(schedule, prefetcher);
+                        }
+                        final TagIndex newTagIndex = TagIndex.build(schedule);
+                        if (indexedSchedule.get() == schedule) {
+                            tagIndex = newTagIndex;
+                            // the searches use the index from now on
+                            searchCache.clear();
+                            if (logger.isInfoEnabled()) {
+                                logger.info("Indexed " + newTagIndex.getTagCount() + " tags in "
+                                        + (System.currentTimeMillis() - start) + " ms.");
+                            }
+                        }
+                    } catch (final InterruptedException e) {
+                        // shut down while waiting for the rate limit
+                        Thread.currentThread().interrupt();
+                        indexedSchedule.compareAndSet(schedule, null);
+                    } catch (final RuntimeException e) {
+                        logger.warn("Indexing the tags failed, searching without the index.", e);
+                        indexedSchedule.compareAndSet(schedule, null);
+                    }
+                }
+            });
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final long start = System.currentTimeMillis();
+                        final FullTextIndex newFullTextIndex = FullTextIndex.build(schedule, fullTextIndex);
+                        if (indexedSchedule.get() == schedule) {
+                            fullTextIndex = newFullTextIndex;
+                            if (logger.isInfoEnabled()) {
+                                logger.info("Indexed " + newFullTextIndex.getTermCount() + " terms in "
+                                        + (System.currentTimeMillis() - start) + " ms.");
+                            }
+                        }
+                    } catch (final RuntimeException e) {
+                        logger.warn("Indexing the text failed, searching without the index.", e);
+                        indexedSchedule.compareAndSet(schedule, null);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // shut down at the same time
+            indexedSchedule.compareAndSet(schedule, null);
+        }
+    }
+
+    /**
+     * Loads the details of the given presentations through the prefetcher, so
+     * that the indexing doesn't exceed its rate limit. Details already loaded
+     * by the prefetch threads are skipped.
+     */
+    private static void loadDetails(final List<DevoxxPresentation> schedule, final DetailPrefetcher prefetcher)
+            throws InterruptedException {
+        for (final DevoxxPresentation presentation : schedule) {
+            if (presentation instanceof LazyLoadable) {
+                prefetcher.load((LazyLoadable) presentation);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the cached data now. Data that has expired is dropped and the
+     * rest is reloaded, keeping the previous data if reloading fails. The
+     * search results are dropped instead once the tag index is ready, as the
+     * searches use the index.
+     */
+    public void refresh() {
+        final long now = System.currentTimeMillis();
+
+        // refresh the schedule first so that the refreshed search results
+        // reuse the new presentation instances
+        refresh(scheduleCache, SCHEDULE_KEY, now);
+        if (tagIndex == null) {
+            for (final String key : searchCache.keys()) {
+                refresh(searchCache, key, now);
+            }
+        } else {
+            // not read while there's an index, loaded only by searches made
+            // right before the index was ready
+            searchCache.clear();
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Search cache: " + searchCache);
+        }
+    }
+
+    private void refresh(final ExpiringLruCache<String, Future<CachedResult>> cache, final String key,
+            final long now) {
+        final Future<CachedResult> future = cache.peek(key);
+        if (future == null || !future.isDone()) {
+            // not cached or still loading for the first time
+            return;
+        }
+
+        final CachedResult cached = getResult(cache, key, future);
+        if (isExpired(cached, now)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Dropping expired " + key);
+            }
+            cache.remove(key, future);
+        } else if (refreshInMs > 0) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Refreshing " + key);
+            }
+            try {
+                final CachedResult refreshed = cached.reload();
+                cache.replace(key, future, completed(refreshed));
+            } catch (final Exception e) {
+                logger.warn("Refreshing " + key + " failed, keeping the previous data.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached data for the given key, loading it with the given
+     * loader if it's not cached yet. Only one loader runs per key at a time,
+     * other callers wait for its result. Failed loads are not cached.
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    private List<DevoxxPresentation> getCached(final ExpiringLruCache<String, Future<CachedResult>> cache,
+            final String key, final Callable<List<DevoxxPresentation>> loader) {
+        Future<CachedResult> future = cache.get(key);
+        if (future == null) {
+            getRefreshExecutor();
+
+            final FutureTask<CachedResult> task = new FutureTask<CachedResult>(new CachedResult(loader));
+            future = cache.putIfAbsent(key, task);
+            if (future == null) {
+                // cache miss, load in this thread
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Loading " + key);
+                }
+                future = task;
+                task.run();
+            }
+        }
+
+        final CachedResult cached = getResult(cache, key, future);
+        final long now = System.currentTimeMillis();
+        if (refreshInMs <= 0 && isExpired(cached, now)) {
+            // not refreshed in the background, so reload expired data here
+            cache.remove(key, future);
+            return getCached(cache, key, loader);
+        }
+        cached.lastAccessed = now;
+        return cached.data;
+    }
+
+    private boolean isExpired(final CachedResult cached, final long now) {
+        if (refreshInMs > 0) {
+            return now - cached.lastAccessed >= expirationInMs;
+        }
+        return now - cached.loaded >= expirationInMs;
+    }
+
+    private static CachedResult getResult(final ExpiringLruCache<String, Future<CachedResult>> cache,
+            final String key, final Future<CachedResult> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            // let the next caller try again
+            cache.remove(key, future);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static Future<CachedResult> completed(final CachedResult result) {
+        final FutureTask<CachedResult> future = new FutureTask<CachedResult>(new Runnable() {
+            @Override
+            public void run() {
+                // nothing to do, the result is already known
+            }
+        }, result);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Cached data together with the loader used to refresh it. Used as the
+     * Callable of the initial load and returns itself once the data is loaded.
+     */
+    private static class CachedResult implements Callable<CachedResult> {
+
+        private final Callable<List<DevoxxPresentation>> loader;
+        private List<DevoxxPresentation> data;
+        private long loaded;
+        private volatile long lastAccessed;
+
+        public CachedResult(final Callable<List<DevoxxPresentation>> loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public CachedResult call() throws Exception {
+            data = loader.call();
+            loaded = System.currentTimeMillis();
+            lastAccessed = loaded;
+            return this;
+        }
+
+        /**
+         * Loads the data again into a new CachedResult keeping the access
+         * time of this one.
+         */
+        public CachedResult reload() throws Exception {
+            final CachedResult result = new CachedResult(loader).call();
+            result.lastAccessed = lastAccessed;
+            return result;
+        }
+    }
+}
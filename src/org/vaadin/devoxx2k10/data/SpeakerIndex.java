@@ -0,0 +1,111 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.util.IntList;
+
+/**
+ * Immutable index of the speakers of a schedule and the presentations they
+ * give. Each speaker id maps to a sorted array of positions in the schedule,
+ * so the talks of a speaker are in the schedule order.
+ *
+ * Building the index only needs the speaker ids, so it doesn't load any
+ * lazy loaded details.
+ */
+public class SpeakerIndex {
+
+    private final List<DevoxxPresentation> schedule;
+    private final Map<Integer, DevoxxSpeaker> speakersById;
+    private final Map<Integer, int[]> positionsBySpeaker;
+
+    private SpeakerIndex(final List<DevoxxPresentation> schedule, final Map<Integer, DevoxxSpeaker> speakersById,
+            final Map<Integer, int[]> positionsBySpeaker) {
+        this.schedule = schedule;
+        this.speakersById = speakersById;
+        this.positionsBySpeaker = positionsBySpeaker;
+    }
+
+    /**
+     * Builds an index of the given schedule.
+     *
+     * @param schedule
+     * @return
+     */
+    public static SpeakerIndex build(final List<DevoxxPresentation> schedule) {
+        final Map<Integer, DevoxxSpeaker> speakersById = new HashMap<Integer, DevoxxSpeaker>();
+        final Map<Integer, IntList> positions = new HashMap<Integer, IntList>();
+        for (int i = 0; i < schedule.size(); i++) {
+            final List<DevoxxSpeaker> speakers = schedule.get(i).getSpeakers();
+            if (speakers == null) {
+                continue;
+            }
+            for (final DevoxxSpeaker speaker : speakers) {
+                if (!speakersById.containsKey(speaker.getId())) {
+                    speakersById.put(speaker.getId(), speaker);
+                }
+                IntList speakerPositions = positions.get(speaker.getId());
+                if (speakerPositions == null) {
+                    speakerPositions = new IntList(2);
+                    positions.put(speaker.getId(), speakerPositions);
+                }
+                // positions are added in order, so the lists are sorted, and
+                // a speaker listed twice for a presentation is added once
+                speakerPositions.addIfNotLast(i);
+            }
+        }
+
+        final Map<Integer, int[]> positionsBySpeaker = new HashMap<Integer, int[]>(positions.size() * 4 / 3 + 1);
+        for (final Map.Entry<Integer, IntList> entry : positions.entrySet()) {
+            positionsBySpeaker.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new SpeakerIndex(schedule, speakersById, positionsBySpeaker);
+    }
+
+    /**
+     * Returns the speaker with the given id or null if the speaker has no
+     * presentations in the schedule.
+     *
+     * @param speakerId
+     * @return
+     */
+    public DevoxxSpeaker getSpeaker(final int speakerId) {
+        return speakersById.get(speakerId);
+    }
+
+    /**
+     * Returns the presentations of the speaker with the given id.
+     *
+     * @param speakerId
+     * @return
+     */
+    public List<DevoxxPresentation> getTalks(final int speakerId) {
+        final int[] positions = positionsBySpeaker.get(speakerId);
+        if (positions == null) {
+            return Collections.emptyList();
+        }
+        final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>(positions.length);
+        for (final int position : positions) {
+            result.add(schedule.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the schedule this index was built from.
+     *
+     * @return
+     */
+    public List<DevoxxPresentation> getSchedule() {
+        return schedule;
+    }
+
+    public int getSpeakerCount() {
+        return speakersById.size();
+    }
+}
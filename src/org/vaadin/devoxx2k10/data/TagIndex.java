@@ -0,0 +1,114 @@
+package org.vaadin.devoxx2k10.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.util.IntList;
+
+/**
+ * Immutable inverted index from tags to the presentations of a schedule. Each
+ * tag maps to a sorted array of positions in the schedule, so search results
+ * are in the schedule order. Tags are matched case-insensitively.
+ */
+public class TagIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<DevoxxPresentation> schedule;
+    private final Map<String, int[]> positionsByTag;
+
+    private TagIndex(final List<DevoxxPresentation> schedule, final Map<String, int[]> positionsByTag) {
+        this.schedule = schedule;
+        this.positionsByTag = positionsByTag;
+    }
+
+    /**
+     * Builds an index of the given schedule. Note that this loads the tags of
+     * every presentation, which may lazy load their details.
+     *
+     * @param schedule
+     * @return
+     */
+    public static TagIndex build(final List<DevoxxPresentation> schedule) {
+        final Map<String, IntList> positions = new HashMap<String, IntList>();
+        for (int i = 0; i < schedule.size(); i++) {
+            final Set<String> tags = schedule.get(i).getTags();
+            if (tags == null) {
+                continue;
+            }
+            for (final String tag : tags) {
+                final String key = normalize(tag);
+                IntList tagPositions = positions.get(key);
+                if (tagPositions == null) {
+                    tagPositions = new IntList();
+                    positions.put(key, tagPositions);
+                }
+                // positions are added in order, so the lists are sorted, and
+                // tags differing only by case are added once
+                tagPositions.addIfNotLast(i);
+            }
+        }
+
+        final Map<String, int[]> positionsByTag = new HashMap<String, int[]>(positions.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, IntList> entry : positions.entrySet()) {
+            positionsByTag.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new TagIndex(schedule, positionsByTag);
+    }
+
+    /**
+     * Returns the presentations having the given tag.
+     *
+     * @param tag
+     * @return
+     */
+    public List<DevoxxPresentation> search(final String tag) {
+        final int[] positions = getPositions(tag);
+        if (positions.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>(positions.length);
+        for (final int position : positions) {
+            result.add(schedule.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted schedule positions of the presentations having the
+     * given tag. The returned array must not be modified.
+     *
+     * @param tag
+     * @return
+     */
+    public int[] getPositions(final String tag) {
+        if (tag == null) {
+            return EMPTY;
+        }
+        final int[] positions = positionsByTag.get(normalize(tag));
+        return positions != null ? positions : EMPTY;
+    }
+
+    /**
+     * Returns the schedule this index was built from.
+     *
+     * @return
+     */
+    public List<DevoxxPresentation> getSchedule() {
+        return schedule;
+    }
+
+    public int getTagCount() {
+        return positionsByTag.size();
+    }
+
+    private static String normalize(final String tag) {
+        return tag.trim().toLowerCase(Locale.ENGLISH);
+    }
+}
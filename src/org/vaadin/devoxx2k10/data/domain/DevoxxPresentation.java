@@ -35,4 +35,11 @@ public interface DevoxxPresentation {
     String getExperience();
 
     Set<String> getTags();
+
+    /**
+     * Returns the key ordering the presentations by their start time and room.
+     * 
+     * @return
+     */
+    long getSortKey();
 }
@@ -1,9 +1,11 @@
 package org.vaadin.devoxx2k10.data.domain;
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+
+import org.vaadin.devoxx2k10.util.IntSet;
 
 /**
  * Details of a user of the MySchedule feature.
@@ -12,7 +14,7 @@ public class MyScheduleUser {
 
     private String email;
     private String activationCode;
-    private Set<Integer> favourites;
+    private IntSet favourites;
     private List<UserFavouritesChangedListener> listeners = new LinkedList<UserFavouritesChangedListener>();
 
     public MyScheduleUser(final String email, final String activationCode) {
@@ -36,32 +38,68 @@ public class MyScheduleUser {
         this.activationCode = activationCode;
     }
 
-    public Set<Integer> getFavourites() {
+    /**
+     * Returns the ids of the favourite presentations or null if they haven't
+     * been retrieved. The returned set must not be modified.
+     * 
+     * @return
+     */
+    public IntSet getFavourites() {
         return favourites;
     }
 
-    public void setFavourites(final Set<Integer> favourites) {
+    public void setFavourites(final IntSet favourites) {
         this.favourites = favourites;
     }
 
     public void addFavourite(final DevoxxPresentation presentation) {
+        addFavourites(Collections.singleton(presentation));
+    }
+
+    public void removeFavourite(final DevoxxPresentation presentation) {
+        removeFavourites(Collections.singleton(presentation));
+    }
+
+    /**
+     * Adds the given presentations to the favourites, notifying the listeners
+     * once about all of them.
+     * 
+     * @param presentations
+     */
+    public void addFavourites(final Collection<DevoxxPresentation> presentations) {
         if (favourites == null) {
-            favourites = new HashSet<Integer>();
+            favourites = new IntSet();
+        }
+        final IntSet addedIds = new IntSet();
+        for (final DevoxxPresentation presentation : presentations) {
+            if (favourites.add(presentation.getId())) {
+                addedIds.add(presentation.getId());
+            }
         }
-        boolean added = favourites.add(presentation.getId());
-        if (added) {
-            notifyListeners();
+        if (!addedIds.isEmpty()) {
+            notifyListeners(addedIds, new IntSet());
         }
     }
 
-    public void removeFavourite(final DevoxxPresentation presentation) {
-        if (favourites != null) {
-            // Must cast to Integer to avoid calling remove by index.
-            boolean removed = favourites.remove((Integer) presentation.getId());
-            if (removed) {
-                notifyListeners();
+    /**
+     * Removes the given presentations from the favourites, notifying the
+     * listeners once about all of them.
+     * 
+     * @param presentations
+     */
+    public void removeFavourites(final Collection<DevoxxPresentation> presentations) {
+        if (favourites == null) {
+            return;
+        }
+        final IntSet removedIds = new IntSet();
+        for (final DevoxxPresentation presentation : presentations) {
+            if (favourites.remove(presentation.getId())) {
+                removedIds.add(presentation.getId());
             }
         }
+        if (!removedIds.isEmpty()) {
+            notifyListeners(new IntSet(), removedIds);
+        }
     }
 
     public boolean hasFavourited(final DevoxxPresentation presentation) {
@@ -81,9 +119,9 @@ public class MyScheduleUser {
     /**
      * Notifies all listeners about a change in this user's favourites.
      */
-    private void notifyListeners() {
+    private void notifyListeners(final IntSet addedIds, final IntSet removedIds) {
         for (UserFavouritesChangedListener listener : listeners) {
-            listener.favouritesChanged(this);
+            listener.favouritesChanged(this, addedIds, removedIds);
         }
     }
 
@@ -93,7 +131,13 @@ public class MyScheduleUser {
          * Called when the favourites of a {@link MyScheduleUser} is changed.
          * 
          * @param user
+         * @param addedIds
+         *            ids of the presentations added to the favourites, not to
+         *            be modified.
+         * @param removedIds
+         *            ids of the presentations removed from the favourites, not
+         *            to be modified.
          */
-        void favouritesChanged(MyScheduleUser user);
+        void favouritesChanged(MyScheduleUser user, IntSet addedIds, IntSet removedIds);
     }
 }
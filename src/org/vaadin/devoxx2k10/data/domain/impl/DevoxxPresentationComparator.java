@@ -2,7 +2,10 @@ package org.vaadin.devoxx2k10.data.domain.impl;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.vaadin.devoxx2k10.Configuration;
@@ -12,25 +15,69 @@ import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
  * Compares the DevoxxPresentations so that they are in chronological order
  * according to the start time and ordered by the room size (from smallest to
  * the largest) when having the same starting time.
+ *
+ * The order is given by the sort key each presentation computes once with
+ * {@link #getSortKey(Date, String)}, so comparing doesn't look up the rooms.
  */
 public class DevoxxPresentationComparator implements Comparator<DevoxxPresentation> {
 
-    /** Predefined room order of Devoxx */
-    private static final List<String> conferenceRoomOrder;
+    /** Rank of each room in the predefined room order of Devoxx */
+    private static final Map<String, Integer> roomRanks = new HashMap<String, Integer>();
+
+    /** Rank of the rooms not in the predefined order, sorted last */
+    private static final int UNKNOWN_ROOM_RANK;
 
     static {
-        conferenceRoomOrder = Arrays.asList(Configuration.getArrayProperty("conference.room.ordering"));
-        if (!conferenceRoomOrder.isEmpty()) {
-            Logger.getLogger(DevoxxPresentationComparator.class).info("Using room ordering: " + conferenceRoomOrder);
+        final String[] conferenceRoomOrder = Configuration.getArrayProperty("conference.room.ordering");
+        // the rooms later in the configured order come first
+        for (int i = 0; i < conferenceRoomOrder.length; i++) {
+            if (!roomRanks.containsKey(conferenceRoomOrder[i])) {
+                roomRanks.put(conferenceRoomOrder[i], conferenceRoomOrder.length - 1 - i);
+            }
+        }
+        UNKNOWN_ROOM_RANK = conferenceRoomOrder.length;
+        if (conferenceRoomOrder.length > 0) {
+            Logger.getLogger(DevoxxPresentationComparator.class).info(
+                    "Using room ordering: " + Arrays.asList(conferenceRoomOrder));
         }
     }
 
     public int compare(final DevoxxPresentation o1, final DevoxxPresentation o2) {
-        final int dateCompare = o1.getFromTime().compareTo(o2.getFromTime());
-        if (dateCompare == 0) {
-            // compare against the predefined room ordering
-            return conferenceRoomOrder.indexOf(o2.getRoom()) - conferenceRoomOrder.indexOf(o1.getRoom());
+        final long key1 = o1.getSortKey();
+        final long key2 = o2.getSortKey();
+        return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+    }
+
+    /**
+     * Returns the key ordering a presentation with the given start time and
+     * room: the start time in milliseconds combined with the rank of the room.
+     *
+     * @param fromTime
+     * @param room
+     * @return
+     */
+    public static long getSortKey(final Date fromTime, final String room) {
+        final Integer rank = room != null ? roomRanks.get(room) : null;
+        final long time = fromTime != null ? fromTime.getTime() : 0;
+        return time * (UNKNOWN_ROOM_RANK + 1) + (rank != null ? rank : UNKNOWN_ROOM_RANK);
+    }
+
+    /**
+     * Returns true if the given presentations are already in order, in which
+     * case they don't need to be sorted.
+     *
+     * @param presentations
+     * @return
+     */
+    public static boolean isSorted(final List<DevoxxPresentation> presentations) {
+        long previous = Long.MIN_VALUE;
+        for (final DevoxxPresentation presentation : presentations) {
+            final long key = presentation.getSortKey();
+            if (key < previous) {
+                return false;
+            }
+            previous = key;
         }
-        return dateCompare;
+        return true;
     }
 }
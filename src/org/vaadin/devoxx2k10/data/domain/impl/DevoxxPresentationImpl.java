@@ -5,15 +5,17 @@ import java.util.List;
 import java.util.Set;
 
 import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.AbstractLazyLoadable;
 import org.vaadin.devoxx2k10.data.LazyLoad;
-import org.vaadin.devoxx2k10.data.LazyLoadable;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
 import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.util.DateUtil;
 
-public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable {
+public class DevoxxPresentationImpl extends AbstractLazyLoadable implements DevoxxPresentation {
 
     private final int id;
+    /** Canonical immutable dates, shared by all sessions */
     private final Date fromTime;
     private final Date toTime;
     private final String code;
@@ -24,6 +26,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
     private final String room;
     private final boolean partnerSlot;
     private final String presentationUri;
+    private final long sortKey;
 
     private volatile String summary;
     private volatile String track;
@@ -34,8 +37,8 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
             final String type, final DevoxxPresentationKind kind, final String title, final List<DevoxxSpeaker> speakers,
             final String room, final boolean partnerSlot, final String presentationUri) {
         this.id = id;
-        this.fromTime = fromTime;
-        this.toTime = toTime;
+        this.fromTime = DateUtil.getDate(fromTime);
+        this.toTime = DateUtil.getDate(toTime);
         this.code = code;
         this.type = type;
         this.kind = kind;
@@ -44,6 +47,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         this.room = room;
         this.partnerSlot = partnerSlot;
         this.presentationUri = presentationUri;
+        this.sortKey = DevoxxPresentationComparator.getSortKey(fromTime, room);
     }
 
     public String getType() {
@@ -74,6 +78,10 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         return code;
     }
 
+    public long getSortKey() {
+        return sortKey;
+    }
+
     public String getRoom() {
         return room;
     }
@@ -102,6 +110,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
 
     @LazyLoad("summary")
     public String getSummary() {
+        ensureLoaded();
         return summary;
     }
 
@@ -111,6 +120,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
 
     @LazyLoad("track")
     public String getTrack() {
+        ensureLoaded();
         return track;
     }
 
@@ -120,6 +130,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
 
     @LazyLoad("experience")
     public String getExperience() {
+        ensureLoaded();
         return experience;
     }
 
@@ -129,6 +140,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
 
     @LazyLoad("tags/name")
     public Set<String> getTags() {
+        ensureLoaded();
         return tags;
     }
 
@@ -141,7 +153,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         final int prime = 31;
         int result = 1;
         result = prime * result + ((code == null) ? 0 : code.hashCode());
-        result = prime * result + ((fromTime == null) ? 0 : fromTime.hashCode());
+        result = prime * result + fromTime.hashCode();
         result = prime * result + id;
         result = prime * result + ((kind == null) ? 0 : kind.hashCode());
         result = prime * result + (partnerSlot ? 1231 : 1237);
@@ -149,7 +161,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         result = prime * result + ((room == null) ? 0 : room.hashCode());
         result = prime * result + ((speakers == null) ? 0 : speakers.hashCode());
         result = prime * result + ((title == null) ? 0 : title.hashCode());
-        result = prime * result + ((toTime == null) ? 0 : toTime.hashCode());
+        result = prime * result + toTime.hashCode();
         result = prime * result + ((type == null) ? 0 : type.hashCode());
         return result;
     }
@@ -170,10 +182,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         if (id != other.getId())
             return false;
 
-        if (fromTime == null) {
-            if (other.getFromTime() != null)
-                return false;
-        } else if (!fromTime.equals(other.getFromTime()))
+        if (!fromTime.equals(other.getFromTime()))
             return false;
 
         if (code == null) {
@@ -206,10 +215,7 @@ public class DevoxxPresentationImpl implements DevoxxPresentation, LazyLoadable
         } else if (!title.equals(other.getTitle()))
             return false;
 
-        if (toTime == null) {
-            if (other.getToTime() != null)
-                return false;
-        } else if (!toTime.equals(other.getToTime()))
+        if (!toTime.equals(other.getToTime()))
             return false;
 
         if (type == null) {
@@ -1,16 +1,16 @@
 package org.vaadin.devoxx2k10.data.domain.impl;
 
+import org.vaadin.devoxx2k10.data.AbstractLazyLoadable;
 import org.vaadin.devoxx2k10.data.LazyLoad;
-import org.vaadin.devoxx2k10.data.LazyLoadable;
 import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
 
 /**
  * DevoxxSpeaker implementation that uses lazy loading for certain details.
  * 
- * @see org.vaadin.devoxx2k10.data.LazyLoadable
+ * @see org.vaadin.devoxx2k10.data.AbstractLazyLoadable
  * @see org.vaadin.devoxx2k10.data.LazyLoad
  */
-public final class DevoxxSpeakerImpl implements DevoxxSpeaker, LazyLoadable {
+public final class DevoxxSpeakerImpl extends AbstractLazyLoadable implements DevoxxSpeaker {
 
     private final int id;
     private final String name;
@@ -35,6 +35,7 @@ public final class DevoxxSpeakerImpl implements DevoxxSpeaker, LazyLoadable {
 
     @LazyLoad("imageURI")
     public String getImageUri() {
+        ensureLoaded();
         return imageUri;
     }
 
@@ -44,6 +45,7 @@ public final class DevoxxSpeakerImpl implements DevoxxSpeaker, LazyLoadable {
 
     @LazyLoad("bio")
     public String getBio() {
+        ensureLoaded();
         return bio;
     }
 
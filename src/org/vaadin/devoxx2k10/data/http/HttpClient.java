@@ -13,6 +13,31 @@ public interface HttpClient {
      */
     HttpResponse get(String urlString) throws IOException;
 
+    /**
+     * Conditional Http Get method. Sends the validators of the given previous
+     * response (If-None-Match / If-Modified-Since), so that the server may
+     * respond with 304 (Not Modified) and no body if nothing has changed.
+     *
+     * @param urlString the URL string
+     * @param previousResponse earlier response from the same URL (null allowed)
+     * @return the HTTP response
+     * @throws IOException
+     * @see HttpResponse#isNotModified()
+     */
+    HttpResponse get(String urlString, HttpResponse previousResponse) throws IOException;
+
+    /**
+     * Conditional Http Get method that streams the response body instead of
+     * buffering it. The returned response must be closed after use.
+     *
+     * @param urlString the URL string
+     * @param previousResponse earlier response from the same URL (null allowed)
+     * @return the HTTP response with a streamed body
+     * @throws IOException
+     * @see HttpResponse#getReader()
+     */
+    HttpResponse openStream(String urlString, HttpResponse previousResponse) throws IOException;
+
     /**
      * Http Post method.
      *
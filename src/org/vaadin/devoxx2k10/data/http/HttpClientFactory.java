@@ -0,0 +1,60 @@
+package org.vaadin.devoxx2k10.data.http;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.http.impl.HttpClientImpl;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+import org.vaadin.devoxx2k10.data.http.impl.PooledHttpClientImpl;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+
+/**
+ * Factory for the HttpClient used to access the REST API. The implementation
+ * is selected with the <code>http.client</code> configuration property:
+ * <ul>
+ * <li><code>simple</code> (default) - {@link HttpClientImpl}</li>
+ * <li><code>pooled</code> - {@link PooledHttpClientImpl}</li>
+ * <li><code>offline</code> - {@link OfflineHttpClientMock} using the snapshot
+ * given in the <code>http.offline.snapshot</code> property</li>
+ * <li><code>snapshot</code> - {@link SnapshotHttpClient} using the archive of
+ * the snapshot given in the <code>http.offline.snapshot</code> property</li>
+ * </ul>
+ *
+ * The same instance is shared by all users of the application so that a
+ * pooling implementation can reuse its connections across sessions.
+ */
+public class HttpClientFactory {
+
+    private static final String SIMPLE = "simple";
+    private static final String POOLED = "pooled";
+    private static final String OFFLINE = "offline";
+    private static final String SNAPSHOT = "snapshot";
+
+    private static HttpClient sharedHttpClient;
+
+    /**
+     * Returns the shared HttpClient configured for this application.
+     *
+     * @return
+     */
+    public static synchronized HttpClient getHttpClient() {
+        if (sharedHttpClient == null) {
+            sharedHttpClient = createHttpClient(Configuration.getProperty("http.client"));
+            Logger.getLogger(HttpClientFactory.class).info(
+                    "Using HttpClient " + sharedHttpClient.getClass().getName());
+        }
+        return sharedHttpClient;
+    }
+
+    private static HttpClient createHttpClient(final String type) {
+        if (type == null || type.length() == 0 || type.equals(SIMPLE)) {
+            return new HttpClientImpl();
+        } else if (type.equals(POOLED)) {
+            return new PooledHttpClientImpl();
+        } else if (type.equals(OFFLINE)) {
+            return new OfflineHttpClientMock(Configuration.getProperty("http.offline.snapshot"));
+        } else if (type.equals(SNAPSHOT)) {
+            return new SnapshotHttpClient(Configuration.getProperty("http.offline.snapshot"));
+        }
+        throw new IllegalArgumentException("Unknown http.client: " + type);
+    }
+}
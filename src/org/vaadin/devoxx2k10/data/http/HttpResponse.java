@@ -1,23 +1,150 @@
 package org.vaadin.devoxx2k10.data.http;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+
 /**
- * Simple immutable HttpResponse representation with only response code and the response body.
+ * Simple HttpResponse representation with only response code, the response
+ * body and the validators (ETag and Last-Modified) needed for conditional
+ * requests.
+ *
+ * The body is either already buffered as a String or streamed from the
+ * connection. A streamed body can be read once, either through
+ * {@link #getReader()} or by buffering it with {@link #getResponse()}, and the
+ * response must be closed after use to release the underlying connection.
  */
-public class HttpResponse {
+public class HttpResponse implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
 
     private final int responseCode;
-    private final String response;
+    private final String eTag;
+    private final String lastModified;
+
+    private String response;
+    private Reader body;
 
     public HttpResponse(final int responseCode, final String response) {
+        this(responseCode, response, null, null);
+    }
+
+    public HttpResponse(final int responseCode, final String response, final String eTag, final String lastModified) {
         this.responseCode = responseCode;
         this.response = response;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates a response whose body is streamed from the given Reader. Closing
+     * the response closes the Reader.
+     *
+     * @param responseCode
+     * @param body
+     * @param eTag
+     * @param lastModified
+     */
+    public HttpResponse(final int responseCode, final Reader body, final String eTag, final String lastModified) {
+        this.responseCode = responseCode;
+        this.body = body;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
     }
 
     public int getResponseCode() {
         return responseCode;
     }
 
-    public String getResponse() {
+    /**
+     * Returns the response body as a String. A streamed body is read fully and
+     * the response closed on the first call.
+     *
+     * @return the response body or null if the response has no body.
+     * @throws IOException
+     *             if reading a streamed body fails.
+     */
+    public synchronized String getResponse() throws IOException {
+        if (response == null && body != null) {
+            try {
+                final StringBuilder result = new StringBuilder(BUFFER_SIZE);
+                final char[] buffer = new char[BUFFER_SIZE];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    result.append(buffer, 0, read);
+                }
+                response = result.toString();
+            } finally {
+                close();
+            }
+        }
         return response;
     }
+
+    /**
+     * Returns a Reader for the response body. For a streamed body the data is
+     * read directly from the connection without buffering it first.
+     *
+     * @return Reader for the body or null if the response has no body.
+     */
+    public synchronized Reader getReader() {
+        if (body != null) {
+            return body;
+        }
+        return response != null ? new StringReader(response) : null;
+    }
+
+    /**
+     * Closes a streamed body releasing the underlying connection. Does nothing
+     * if the body has been buffered already.
+     */
+    public synchronized void close() throws IOException {
+        if (body != null) {
+            final Reader closing = body;
+            body = null;
+            closing.close();
+        }
+    }
+
+    /**
+     * Returns the value of the ETag header or null if the server didn't send
+     * one.
+     *
+     * @return
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Returns the value of the Last-Modified header or null if the server
+     * didn't send one.
+     *
+     * @return
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns true if this response has any validators that can be used for a
+     * conditional request.
+     *
+     * @return
+     */
+    public boolean hasValidators() {
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * Returns true if the server responded to a conditional request with 304
+     * (Not Modified). Such responses have no body.
+     *
+     * @return
+     */
+    public boolean isNotModified() {
+        return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
 }
@@ -1,11 +1,18 @@
 package org.vaadin.devoxx2k10.data.http.impl;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -14,12 +21,16 @@ import org.vaadin.devoxx2k10.data.http.HttpClient;
 import org.vaadin.devoxx2k10.data.http.HttpResponse;
 
 /**
- * A very simple HttpClient implementation.
+ * A very simple HttpClient implementation. Responses are requested with gzip
+ * or deflate encoding and decoded while they are read. Deflate responses are
+ * accepted both in the zlib format and as raw deflate data.
  */
 public class HttpClientImpl implements HttpClient {
 
     private static final String USER_AGENT = "VaadinDevoxxScheduleApp";
     private static final String POST_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String DEFAULT_CHARSET = "utf-8";
 
     private final Logger logger = Logger.getLogger(getClass());
 
@@ -32,38 +43,151 @@ public class HttpClientImpl implements HttpClient {
      */
     @Override
     public HttpResponse get(final String urlString) throws IOException {
+        return get(urlString, null);
+    }
+
+    /**
+     * Does a conditional HTTP GET from the given URL using the validators of
+     * the given previous response. Returns a response without a body if the
+     * server responds with 304 (Not Modified).
+     * 
+     * @param urlString
+     * @param previousResponse
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public HttpResponse get(final String urlString, final HttpResponse previousResponse) throws IOException {
+        final HttpResponse response = openStream(urlString, previousResponse);
+        try {
+            // buffer the body, which also releases the connection
+            response.getResponse();
+        } finally {
+            response.close();
+        }
+        return response;
+    }
+
+    /**
+     * Does a conditional HTTP GET from the given URL and returns a response
+     * whose body is decoded and streamed directly from the connection. The
+     * connection is released when the response is closed.
+     * 
+     * @param urlString
+     * @param previousResponse
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public HttpResponse openStream(final String urlString, final HttpResponse previousResponse) throws IOException {
         if (logger.isDebugEnabled()) {
             logger.debug("HTTP GET: " + urlString);
         }
 
         final HttpURLConnection urlConnection = openURLConnection(urlString);
+        boolean streaming = false;
 
         try {
+            urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+            if (previousResponse != null) {
+                if (previousResponse.getETag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", previousResponse.getETag());
+                }
+                if (previousResponse.getLastModified() != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", previousResponse.getLastModified());
+                }
+            }
+
             final int responseCode = urlConnection.getResponseCode();
+            final String eTag = urlConnection.getHeaderField("ETag");
+            final String lastModified = urlConnection.getHeaderField("Last-Modified");
 
             if (logger.isDebugEnabled()) {
-                logger.debug("Response code: " + responseCode);
+                logger.debug("Response code: " + responseCode + ", encoding: " + urlConnection.getContentEncoding());
             }
 
             if (responseCode == HttpServletResponse.SC_NOT_FOUND) {
-                return new HttpResponse(responseCode, null);
+                return new HttpResponse(responseCode, (String) null);
+            }
+            if (responseCode == HttpServletResponse.SC_NOT_MODIFIED) {
+                return new HttpResponse(responseCode, (String) null, eTag, lastModified);
             }
 
-            final BufferedReader in = new BufferedReader(new InputStreamReader(urlConnection.getInputStream(), "utf-8"));
-            try {
-                final StringBuilder result = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    result.append(line);
-                    line = in.readLine();
+            final InputStream in = new ConnectionReleasingInputStream(getDecodedInputStream(urlConnection),
+                    urlConnection);
+            final Reader body = new BufferedReader(new InputStreamReader(in, getCharset(urlConnection)));
+            streaming = true;
+            return new HttpResponse(responseCode, body, eTag, lastModified);
+        } finally {
+            if (!streaming) {
+                closeURLConnection(urlConnection);
+            }
+        }
+    }
+
+    /**
+     * Returns the input stream of the given connection wrapped in a decoder
+     * matching its Content-Encoding.
+     */
+    private InputStream getDecodedInputStream(final HttpURLConnection urlConnection) throws IOException {
+        final InputStream in = urlConnection.getInputStream();
+        final String encoding = urlConnection.getContentEncoding();
+        if (encoding != null) {
+            if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+                return new GZIPInputStream(in);
+            } else if (encoding.equalsIgnoreCase("deflate")) {
+                return getInflaterInputStream(in);
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Returns a decoder for a deflate encoded stream. The encoding should be
+     * deflate data in the zlib format, but some servers send raw deflate data
+     * without the zlib header, so the header is checked first.
+     */
+    private InputStream getInflaterInputStream(final InputStream in) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        final int first = buffered.read();
+        final int second = buffered.read();
+        buffered.reset();
+
+        // compression method 8 (deflate) and a header checksum divisible by 31
+        if (first != -1 && second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0) {
+            return new InflaterInputStream(buffered);
+        }
+
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(buffered, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // only the default inflater is released by the stream
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the charset of the response from the Content-Type header or
+     * UTF-8 if none is specified.
+     */
+    private String getCharset(final HttpURLConnection urlConnection) {
+        final String contentType = urlConnection.getContentType();
+        if (contentType != null) {
+            for (final String param : contentType.split(";")) {
+                final String trimmed = param.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8) && trimmed.length() > 8) {
+                    return trimmed.substring(8).replace("\"", "");
                 }
-                return new HttpResponse(responseCode, result.toString());
-            } finally {
-                in.close();
             }
-        } finally {
-            urlConnection.disconnect();
         }
+        return DEFAULT_CHARSET;
     }
 
     /**
@@ -100,14 +224,59 @@ public class HttpClientImpl implements HttpClient {
                 writer.close();
             }
         } finally {
-            urlConnection.disconnect();
+            closeURLConnection(urlConnection);
         }
     }
 
-    private HttpURLConnection openURLConnection(final String urlString) throws IOException {
+    /**
+     * Opens a new connection to the given URL. Subclasses may override this to
+     * configure the connection further.
+     * 
+     * @param urlString
+     * @return
+     * @throws IOException
+     */
+    protected HttpURLConnection openURLConnection(final String urlString) throws IOException {
         final URL url = new URL(urlString);
         final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
         urlConnection.setRequestProperty("User-Agent", USER_AGENT);
         return urlConnection;
     }
+
+    /**
+     * Called once the request made through the given connection has completed.
+     * This implementation simply disconnects the underlying socket.
+     * 
+     * @param urlConnection
+     */
+    protected void closeURLConnection(final HttpURLConnection urlConnection) {
+        urlConnection.disconnect();
+    }
+
+    /**
+     * Releases the connection once the (decoded) response stream is closed.
+     */
+    private class ConnectionReleasingInputStream extends FilterInputStream {
+
+        private final HttpURLConnection urlConnection;
+        private boolean closed;
+
+        public ConnectionReleasingInputStream(final InputStream in, final HttpURLConnection urlConnection) {
+            super(in);
+            this.urlConnection = urlConnection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                closeURLConnection(urlConnection);
+            }
+        }
+    }
 }
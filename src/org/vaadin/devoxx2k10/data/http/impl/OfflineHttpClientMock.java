@@ -54,10 +54,29 @@ public class OfflineHttpClientMock implements HttpClient {
     }
 
     public HttpResponse get(final String urlString) throws IOException {
+        return get(urlString, null);
+    }
+
+    /**
+     * Simulates conditional requests by using a hash of the local data as the
+     * ETag.
+     */
+    public HttpResponse get(final String urlString, final HttpResponse previousResponse) throws IOException {
         logger.debug("GET [offline]: " + urlString);
 
         final String filePath = urlString.replace(RestApiFacadeImpl.REST_API_BASE_URL, "").replaceAll("/", File.separator);
-        return new HttpResponse(HttpURLConnection.HTTP_OK, getLoadLocalJson(filePath));
+        final String json = getLoadLocalJson(filePath);
+        final String eTag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+
+        if (previousResponse != null && eTag.equals(previousResponse.getETag())) {
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_MODIFIED, (String) null, eTag, null);
+        }
+        return new HttpResponse(HttpURLConnection.HTTP_OK, json, eTag, null);
+    }
+
+    public HttpResponse openStream(final String urlString, final HttpResponse previousResponse) throws IOException {
+        // the local data is small enough to be served from memory
+        return get(urlString, previousResponse);
     }
 
     public int post(final String urlString, final String postData) throws IOException {
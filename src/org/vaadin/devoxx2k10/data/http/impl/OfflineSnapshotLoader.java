@@ -1,109 +1,382 @@
 package org.vaadin.devoxx2k10.data.http.impl;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.data.LazyLoadable;
 import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
 import org.vaadin.devoxx2k10.data.http.HttpClient;
 import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.util.RateLimiter;
 
 /**
  * Loads a snapshot of the full schedule JSON data into files for offline usage.
+ * Besides one file per URL for {@link OfflineHttpClientMock}, the snapshot is
+ * written into a single {@link SnapshotArchive} for {@link SnapshotHttpClient}.
+ *
+ * The details of the presentations and speakers are loaded concurrently, each
+ * speaker only once, within the requests per second given in the
+ * <code>snapshot.loader.requests.per.second</code> property to be nice to the
+ * servers. If the schedule itself can't be loaded, nothing is written and the
+ * loader exits with an error. The progress is printed as a periodic summary
+ * and the URLs that failed are listed at the end.
+ *
+ * Arguments:
+ * <ul>
+ * <li><code>-incremental &lt;previous prefix&gt;</code> - loads only what has
+ * changed since the given snapshot using conditional requests, and writes the
+ * changed responses and tombstones for the removed ones also into a separate
+ * diff archive</li>
+ * <li><code>-archive &lt;prefix&gt;</code> - only creates the archive of an
+ * existing snapshot</li>
+ * </ul>
  */
 public class OfflineSnapshotLoader {
 
-    public static void main(final String[] args) {
+    public static final String DIFF_SUFFIX = ".diff";
+
+    private static final long PROGRESS_INTERVAL_IN_SECONDS = 10;
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final File baseDir = new File("src" + File.separator + OfflineHttpClientMock.OFFLINE_DATA_BASEDIR);
+        if (args.length == 2 && args[0].equals("-archive")) {
+            new OfflineSnapshotLoader(args[1], baseDir, null, 1, 0).archiveExisting();
+            return;
+        }
+
         final DateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
-        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader(format.format(new Date()));
+        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader(format.format(new Date()), baseDir,
+                new HttpClientImpl(), Configuration.getIntProperty("snapshot.loader.threads", 4),
+                Configuration.getIntProperty("snapshot.loader.requests.per.second", 4));
+        if (args.length == 2 && args[0].equals("-incremental")) {
+            loader.setPrevious(args[1]);
+        }
         loader.execute();
     }
 
     private final String prefix;
+    private final File baseDir;
     private final HttpClient httpClient;
-    private final RestApiFacadeImpl facade;
-    private File rootDir;
+    private final int threads;
+    private final RateLimiter rateLimiter;
 
-    public OfflineSnapshotLoader(final String prefix) {
+    /** Loaded responses by their path, sorted for the same archive every time */
+    private final Map<String, HttpResponse> responses = new TreeMap<String, HttpResponse>();
+    private final Map<String, HttpResponse> changedResponses = new TreeMap<String, HttpResponse>();
+    private final Set<String> removedPaths = new TreeSet<String>();
+    private final List<String> failures = new ArrayList<String>();
+    private SnapshotArchive previous;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+    /**
+     * @param prefix
+     *            name of the snapshot to create.
+     * @param baseDir
+     *            directory of the snapshots.
+     * @param httpClient
+     * @param threads
+     *            number of concurrent requests.
+     * @param requestsPerSecond
+     *            maximum number of requests per second or zero for no limit.
+     */
+    public OfflineSnapshotLoader(final String prefix, final File baseDir, final HttpClient httpClient,
+            final int threads, final int requestsPerSecond) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
         this.prefix = prefix;
-        this.httpClient = new HttpClientImpl();
-        this.facade = new RestApiFacadeImpl(httpClient);
+        this.baseDir = baseDir;
+        this.httpClient = httpClient;
+        this.threads = threads;
+        this.rateLimiter = new RateLimiter(requestsPerSecond);
+    }
+
+    /**
+     * Loads incrementally on top of the given earlier snapshot: responses the
+     * server reports not modified are taken from it, and only the responses
+     * that have changed and tombstones for the paths that are no longer part
+     * of the schedule are written into the diff archive.
+     *
+     * @param previousPrefix
+     * @throws IOException
+     *             if the archive of the snapshot can't be read.
+     */
+    public void setPrevious(final String previousPrefix) throws IOException {
+        previous = SnapshotArchive.open(new File(baseDir, previousPrefix + SnapshotArchive.FILE_SUFFIX));
     }
 
-    public void execute() {
-        rootDir = new File("src" + File.separator + OfflineHttpClientMock.OFFLINE_DATA_BASEDIR + File.separator + prefix);
-        if (rootDir.exists()) {
-            System.err.println(rootDir.getAbsolutePath() + " already exists!");
-        } else {
-            System.out.println("Loading schedule data to " + rootDir.getAbsolutePath());
-            rootDir.mkdirs();
+    /**
+     * Loads the snapshot and writes its files and archives.
+     *
+     * @throws IOException
+     *             if the schedule can't be loaded, in which case nothing is
+     *             written, or writing fails.
+     * @throws InterruptedException
+     */
+    public void execute() throws IOException, InterruptedException {
+        final File rootDir = new File(baseDir, prefix);
+        System.out.println("Loading schedule data to " + rootDir.getAbsolutePath()
+                + (previous != null ? " incrementally" : ""));
+
+        final long start = System.currentTimeMillis();
+        try {
             loadSchedule();
+        } finally {
+            printFailures();
+        }
+        System.out.println(toString() + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        writeFiles(rootDir);
+        writeArchive(new File(baseDir, prefix + SnapshotArchive.FILE_SUFFIX), responses);
+        if (previous != null) {
+            for (final String path : previous.getPaths()) {
+                if (!responses.containsKey(path)) {
+                    removedPaths.add(path);
+                }
+            }
+            final File diff = new File(baseDir, prefix + DIFF_SUFFIX + SnapshotArchive.FILE_SUFFIX);
+            SnapshotArchive.write(diff, changedResponses, removedPaths);
+            System.out.println(changedResponses.size() + " changed and " + removedPaths.size()
+                    + " removed responses -> " + diff.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Creates the archive of a snapshot loaded earlier from its files.
+     *
+     * @throws IOException
+     *             if the snapshot doesn't exist or can't be read.
+     */
+    public void archiveExisting() throws IOException {
+        final File rootDir = new File(baseDir, prefix);
+        if (!rootDir.isDirectory()) {
+            throw new FileNotFoundException(rootDir.getAbsolutePath() + " doesn't exist");
+        }
+        readFiles(rootDir, "");
+        writeArchive(new File(baseDir, prefix + SnapshotArchive.FILE_SUFFIX), responses);
+    }
+
+    /**
+     * Returns the paths of the responses that are new or have changed since
+     * the previous snapshot.
+     *
+     * @return
+     */
+    public Set<String> getChangedPaths() {
+        synchronized (responses) {
+            return new LinkedHashSet<String>(changedResponses.keySet());
+        }
+    }
+
+    /**
+     * Returns the paths of the previous snapshot that are no longer part of
+     * the schedule, recorded as removed in the diff archive.
+     *
+     * @return
+     */
+    public Set<String> getRemovedPaths() {
+        return new LinkedHashSet<String>(removedPaths);
+    }
+
+    /**
+     * Returns the number of requests and how many of them were not modified,
+     * changed or failed.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        synchronized (responses) {
+            return "requests=" + requestCount + ", notModified=" + notModifiedCount + ", changed="
+                    + changedResponses.size() + ", failures=" + failures.size();
         }
     }
 
-    private void loadSchedule() {
+    private void loadSchedule() throws IOException, InterruptedException {
         // load the schedule JSON
-        saveUrlToFile(RestApiFacadeImpl.SCHEDULE_URL);
+        final HttpResponse scheduleResponse = load(RestApiFacadeImpl.SCHEDULE_URL);
+        if (scheduleResponse == null) {
+            throw new IOException("Loading the schedule from " + RestApiFacadeImpl.SCHEDULE_URL + " failed");
+        }
 
-        // iterate through the actual schedule objects to load all required data
-        final List<DevoxxPresentation> schedule = facade.getFullSchedule();
+        // collect the details of the actual schedule objects, each only once
+        final Set<String> urls = new LinkedHashSet<String>();
+        final List<DevoxxPresentation> schedule = new RestApiFacadeImpl(httpClient).parseSchedule(scheduleResponse
+                .getReader());
         for (final DevoxxPresentation presentation : schedule) {
             if (presentation instanceof LazyLoadable) {
-                saveUrlToFile(((LazyLoadable) presentation).getLazyLoadingUri());
+                addUrl(urls, ((LazyLoadable) presentation).getLazyLoadingUri());
             }
 
             for (final DevoxxSpeaker speaker : presentation.getSpeakers()) {
                 if (speaker instanceof LazyLoadable) {
-                    saveUrlToFile(((LazyLoadable) speaker).getLazyLoadingUri());
+                    addUrl(urls, ((LazyLoadable) speaker).getLazyLoadingUri());
                 }
             }
+        }
 
-            // be nice to servers and take a nap
-            try {
-                Thread.sleep(500);
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (final String url : urls) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            load(url);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(PROGRESS_INTERVAL_IN_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println(toString() + " of " + (urls.size() + 1) + " URLs");
             }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private void saveUrlToFile(final String url) {
-        if (url == null || url.length() == 0) {
-            return;
+    private void addUrl(final Set<String> urls, final String url) {
+        if (url != null && url.length() > 0) {
+            urls.add(url);
         }
+    }
+
+    /**
+     * Loads the given URL, conditionally if it is in the previous snapshot.
+     * If loading fails, the response of the previous snapshot is kept.
+     *
+     * @param url
+     * @return the response, or null if loading failed and there's no earlier
+     *         response.
+     * @throws InterruptedException
+     */
+    private HttpResponse load(final String url) throws InterruptedException {
+        final String path = SnapshotArchive.getPath(url);
+        final HttpResponse previousResponse = previous != null ? previous.getResponse(path) : null;
 
+        HttpResponse response;
         try {
-            // load data and check the response code
-            final HttpResponse response = httpClient.get(url);
-            if (!(response.getResponseCode() == HttpURLConnection.HTTP_OK)) {
-                System.err.println(url + " response code " + response.getResponseCode());
-                return;
+            rateLimiter.acquire();
+            requestCount.incrementAndGet();
+            response = httpClient.get(url, previousResponse != null && previousResponse.hasValidators()
+                    ? previousResponse : null);
+            if (response.isNotModified()) {
+                notModifiedCount.incrementAndGet();
+                response = previousResponse;
+            } else if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                addFailure(url + " response code " + response.getResponseCode());
+                response = previousResponse;
+            }
+            if (response != null) {
+                // buffered before the response is shared
+                response.getResponse();
+            }
+        } catch (final IOException e) {
+            addFailure(url + " failed: " + e.getMessage());
+            response = previousResponse;
+        }
+
+        if (response == null) {
+            return null;
+        }
+
+        synchronized (responses) {
+            responses.put(path, response);
+            if (isChanged(response, previousResponse)) {
+                changedResponses.put(path, response);
             }
+        }
+        return response;
+    }
 
-            // response was ok
-            final String scheduleJson = response.getResponse();
+    private void addFailure(final String failure) {
+        synchronized (responses) {
+            failures.add(failure);
+        }
+    }
 
-            final File target = createFileForUrl(url);
-            if (target != null && target.exists()) {
-                System.out.println(url + " -> " + target.getAbsolutePath());
-                writeToFile(scheduleJson, target);
+    private void printFailures() {
+        synchronized (responses) {
+            if (!failures.isEmpty()) {
+                System.err.println(failures.size() + " requests failed, kept from the previous snapshot if any:");
+                for (final String failure : failures) {
+                    System.err.println("  " + failure);
+                }
             }
+        }
+    }
+
+    private boolean isChanged(final HttpResponse response, final HttpResponse previousResponse) {
+        if (response == previousResponse) {
+            return false;
+        }
+        try {
+            return previousResponse == null || !previousResponse.getResponse().equals(response.getResponse());
         } catch (final IOException e) {
-            e.printStackTrace();
+            // both are buffered already
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeFiles(final File rootDir) throws IOException {
+        for (final Map.Entry<String, HttpResponse> response : responses.entrySet()) {
+            final File target = new File(rootDir, response.getKey().replace("/", File.separator));
+            final File directory = target.getParentFile();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Couldn't create " + directory.getAbsolutePath());
+            }
+            writeToFile(response.getValue().getResponse(), target);
+        }
+    }
+
+    private void writeArchive(final File target, final Map<String, HttpResponse> archived) throws IOException {
+        SnapshotArchive.write(target, archived);
+        System.out.println(archived.size() + " responses -> " + target.getAbsolutePath());
+    }
+
+    private void readFiles(final File dir, final String path) throws IOException {
+        for (final File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                readFiles(file, path + "/" + file.getName());
+            } else {
+                responses.put(path + "/" + file.getName(), new HttpResponse(HttpURLConnection.HTTP_OK,
+                        readFromFile(file)));
+            }
         }
     }
 
     /**
-     * Given target file must exist already.
-     * 
+     * Writes the data into the given file, replacing its possible earlier
+     * contents.
+     *
      * @param data
      * @param target
      * @throws IOException
@@ -117,33 +390,25 @@ public class OfflineSnapshotLoader {
         }
     }
 
-    private File createFileForUrl(String url) throws IOException {
-        if (url == null || url.length() == 0) {
-            throw new IllegalArgumentException("Given url must not be null or empty.");
-        }
-
-        // strip possible trailing slash
-        if (url.endsWith("/")) {
-            url = url.substring(0, url.length() - 1);
-        }
-
-        // strip the base URL
-        url = url.replace(RestApiFacadeImpl.REST_API_BASE_URL, "");
-
-        // fix separator
-        url = url.replaceAll("/", File.separator);
-
-        final String dir = url.substring(0, url.lastIndexOf("/"));
-        final String fileName = url.substring(url.lastIndexOf("/") + 1);
-
-        final File directory = new File(rootDir.getAbsolutePath() + dir);
-        if (directory.exists() || directory.mkdirs()) {
-            final File file = new File(directory.getAbsolutePath() + File.separator + fileName);
-            if (file.createNewFile()) {
-                return file;
+    /**
+     * Reads the given file the way {@link OfflineHttpClientMock} does, joining
+     * the lines.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private String readFromFile(final File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        try {
+            final StringBuilder data = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                data.append(line);
             }
+            return data.toString();
+        } finally {
+            reader.close();
         }
-
-        return null;
     }
 }
@@ -0,0 +1,246 @@
+package org.vaadin.devoxx2k10.data.http.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.Configuration;
+
+/**
+ * HttpClient implementation that keeps the connections to the REST API alive
+ * between requests instead of disconnecting after each request.
+ *
+ * The sockets themselves are cached by the keep-alive cache of the JDK, which
+ * only returns a socket to the cache once the response body has been fully
+ * consumed. This implementation makes sure that happens and bounds the number
+ * of simultaneous connections per host, so that the number of sockets kept
+ * alive stays within the configured limits.
+ *
+ * Configured with the following properties:
+ * <ul>
+ * <li><code>http.pool.max.connections.per.host</code> (default 10)</li>
+ * <li><code>http.pool.idle.timeout.ms</code> (default 60000)</li>
+ * <li><code>http.connect.timeout.ms</code> (default 5000, also used as the
+ * maximum time to wait for a free connection, 0 waits indefinitely)</li>
+ * <li><code>http.read.timeout.ms</code> (default 20000)</li>
+ * </ul>
+ *
+ * The keep-alive cache of the JDK is configured with the
+ * <code>http.keepAlive</code> (default true) and
+ * <code>http.maxConnections</code> (default 5 idle sockets per host) system
+ * properties, which are read only once per JVM. They are deployment
+ * configuration and should be given to the JVM of the servlet container, for
+ * example <code>-Dhttp.maxConnections=10</code> to keep as many sockets alive
+ * as <code>http.pool.max.connections.per.host</code> allows.
+ */
+public class PooledHttpClientImpl extends HttpClientImpl {
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+    private static final int DEFAULT_IDLE_TIMEOUT_MS = 60 * 1000;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 5 * 1000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 20 * 1000;
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final int maxConnectionsPerHost;
+    private final int idleTimeoutMs;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    /** The pools by host, guards the users of the pools */
+    private final Map<String, HostPool> hostPools = new HashMap<String, HostPool>();
+    private final ConcurrentHashMap<HttpURLConnection, HostPool> leasedConnections = new ConcurrentHashMap<HttpURLConnection, HostPool>();
+
+    public PooledHttpClientImpl() {
+        this(Configuration.getIntProperty("http.pool.max.connections.per.host", DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                Configuration.getIntProperty("http.pool.idle.timeout.ms", DEFAULT_IDLE_TIMEOUT_MS),
+                Configuration.getIntProperty("http.connect.timeout.ms", DEFAULT_CONNECT_TIMEOUT_MS),
+                Configuration.getIntProperty("http.read.timeout.ms", DEFAULT_READ_TIMEOUT_MS));
+    }
+
+    public PooledHttpClientImpl(final int maxConnectionsPerHost, final int idleTimeoutMs, final int connectTimeoutMs,
+            final int readTimeoutMs) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("At least one connection per host must be allowed.");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    @Override
+    protected HttpURLConnection openURLConnection(final String urlString) throws IOException {
+        final HostPool pool = getHostPool(new URL(urlString));
+        try {
+            pool.acquire();
+        } catch (final IOException e) {
+            leave(pool);
+            throw e;
+        }
+
+        try {
+            final HttpURLConnection urlConnection = super.openURLConnection(urlString);
+            urlConnection.setConnectTimeout(connectTimeoutMs);
+            urlConnection.setReadTimeout(readTimeoutMs);
+            leasedConnections.put(urlConnection, pool);
+            return urlConnection;
+        } catch (final IOException e) {
+            pool.release();
+            leave(pool);
+            throw e;
+        } catch (final RuntimeException e) {
+            pool.release();
+            leave(pool);
+            throw e;
+        }
+    }
+
+    /**
+     * Consumes the rest of the response instead of disconnecting, so that the
+     * socket is returned to the keep-alive cache.
+     */
+    @Override
+    protected void closeURLConnection(final HttpURLConnection urlConnection) {
+        try {
+            consumeResponse(urlConnection);
+        } finally {
+            final HostPool pool = leasedConnections.remove(urlConnection);
+            if (pool != null) {
+                pool.release();
+                leave(pool);
+            }
+        }
+    }
+
+    private void consumeResponse(final HttpURLConnection urlConnection) {
+        InputStream in = null;
+        try {
+            if (urlConnection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                in = urlConnection.getErrorStream();
+            } else {
+                in = urlConnection.getInputStream();
+            }
+            if (in != null) {
+                final byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // discard the remaining data
+                }
+            }
+        } catch (final IOException ignored) {
+            // Already consumed and closed or the connection is broken. In both
+            // cases there is nothing left to do here.
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException ignored) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the pool of the host of the given URL and registers the caller
+     * as its user until {@link #leave(HostPool)} is called, so that the pool
+     * isn't evicted while a connection is leased or waited for.
+     */
+    private HostPool getHostPool(final URL url) {
+        final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        final String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+
+        synchronized (hostPools) {
+            evictIdlePools();
+
+            HostPool pool = hostPools.get(key);
+            if (pool == null) {
+                pool = new HostPool(key, maxConnectionsPerHost);
+                hostPools.put(key, pool);
+            }
+            pool.users++;
+            return pool;
+        }
+    }
+
+    private void leave(final HostPool pool) {
+        synchronized (hostPools) {
+            pool.users--;
+            pool.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Removes the bookkeeping of hosts that haven't been used within the idle
+     * timeout and have no connections leased or waited for. The idle sockets
+     * themselves are closed by the JDK keep-alive cache. Must be called while
+     * holding the lock of the pools.
+     */
+    private void evictIdlePools() {
+        final long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        for (final Iterator<HostPool> i = hostPools.values().iterator(); i.hasNext();) {
+            final HostPool pool = i.next();
+            if (pool.users == 0 && pool.lastUsed < idleSince) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Evicting idle connection pool for " + pool.key);
+                }
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of hosts with a connection pool.
+     *
+     * @return
+     */
+    public int getHostPoolCount() {
+        synchronized (hostPools) {
+            return hostPools.size();
+        }
+    }
+
+    /**
+     * Bounds the number of simultaneous connections to a single host.
+     */
+    private class HostPool {
+
+        private final String key;
+        private final Semaphore permits;
+        /** Callers holding or waiting for a permit, guarded by hostPools */
+        private int users;
+        /** Guarded by hostPools */
+        private long lastUsed = System.currentTimeMillis();
+
+        public HostPool(final String key, final int size) {
+            this.key = key;
+            this.permits = new Semaphore(size, true);
+        }
+
+        public void acquire() throws IOException {
+            try {
+                if (connectTimeoutMs <= 0) {
+                    permits.acquire();
+                } else if (!permits.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out waiting for a free connection to " + key);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free connection to " + key);
+            }
+        }
+
+        public void release() {
+            permits.release();
+        }
+    }
+}
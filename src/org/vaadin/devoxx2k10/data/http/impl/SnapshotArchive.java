@@ -0,0 +1,376 @@
+package org.vaadin.devoxx2k10.data.http.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+
+/**
+ * Snapshot of REST API responses stored in a single file, so that offline
+ * data can be served from memory without any file I/O per request.
+ *
+ * The file consists of a header, a table of the entries and the payloads
+ * (all numbers big-endian):
+ * <ul>
+ * <li>header: magic <code>DVXS</code>, format version and number of entries
+ * as ints</li>
+ * <li>for each entry: the path of the URL relative to the REST API base URL
+ * (as written by {@link DataOutputStream#writeUTF(String)}), the hash code of
+ * the payload and the offset of the payload as ints, and the ETag and
+ * Last-Modified validators sent by the server as UTF strings, empty if there
+ * were none</li>
+ * <li>for each payload: its length in bytes as an int followed by the UTF-8
+ * encoded response</li>
+ * </ul>
+ *
+ * Since version 3 an entry with the offset -1 is a tombstone without a
+ * payload: a diff archive uses it to record a path that was removed since the
+ * snapshot the diff is based on. Version 2 archives are still read.
+ *
+ * The table is read into a HashMap once, after which a lookup is a hash
+ * lookup and decoding the payload from the mapped file.
+ */
+public class SnapshotArchive {
+
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x44565853;
+    private static final int VERSION = 3;
+    private static final int OLDEST_READABLE_VERSION = 2;
+    private static final int REMOVED_OFFSET = -1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Archives on the classpath by their prefix, shared by all clients */
+    private static final Map<String, SnapshotArchive> classpathArchives = new HashMap<String, SnapshotArchive>();
+
+    private final ByteBuffer data;
+    private final Map<String, Entry> entries;
+    private final Set<String> removedPaths;
+
+    private SnapshotArchive(final ByteBuffer data) throws IOException {
+        this.data = data.asReadOnlyBuffer();
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot archive");
+        }
+        if (data.getInt(4) < OLDEST_READABLE_VERSION || data.getInt(4) > VERSION) {
+            throw new IOException("Unsupported snapshot archive version " + data.getInt(4));
+        }
+
+        final int count = data.getInt(8);
+        final DataInputStream table = new DataInputStream(new ByteBufferInputStream(this.data.duplicate(), 12));
+        entries = new HashMap<String, Entry>(count * 4 / 3 + 1);
+        final Set<String> removed = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            final String path = table.readUTF();
+            final Entry entry = new Entry(table.readInt(), table.readInt(), emptyToNull(table.readUTF()),
+                    emptyToNull(table.readUTF()));
+            if (entry.offset == REMOVED_OFFSET) {
+                removed.add(path);
+            } else {
+                entries.put(path, entry);
+            }
+        }
+        removedPaths = Collections.unmodifiableSet(removed);
+    }
+
+    /**
+     * Maps the given archive file into memory.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static SnapshotArchive open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new SnapshotArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads an archive fully into memory from the given stream, for archives
+     * that can't be mapped such as ones packaged in a JAR. Closes the stream.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static SnapshotArchive read(final InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new SnapshotArchive(ByteBuffer.wrap(bytes.toByteArray()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the archive of the given snapshot from the classpath. The
+     * archive is loaded once and shared.
+     *
+     * @param prefix
+     *            name of the snapshot, for example <code>20101112110640</code>.
+     * @return
+     * @throws IOException
+     *             if the archive is not found or can't be read.
+     */
+    public static SnapshotArchive forPrefix(final String prefix) throws IOException {
+        synchronized (classpathArchives) {
+            SnapshotArchive archive = classpathArchives.get(prefix);
+            if (archive == null) {
+                final String name = OfflineHttpClientMock.OFFLINE_DATA_BASEDIR + "/" + prefix + FILE_SUFFIX;
+                final URL url = SnapshotArchive.class.getClassLoader().getResource(name);
+                if (url == null) {
+                    throw new IOException("Snapshot archive " + name + " not found from the classpath");
+                }
+                if ("file".equals(url.getProtocol())) {
+                    try {
+                        archive = open(new File(url.toURI()));
+                    } catch (final URISyntaxException e) {
+                        throw new IOException(e);
+                    }
+                } else {
+                    archive = read(url.openStream());
+                }
+                classpathArchives.put(prefix, archive);
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * Writes the given responses into an archive file.
+     *
+     * @param target
+     * @param responses
+     *            responses with a buffered body by the path of their URL.
+     * @throws IOException
+     * @see #getPath(String)
+     */
+    public static void write(final File target, final Map<String, HttpResponse> responses) throws IOException {
+        write(target, responses, Collections.<String> emptySet());
+    }
+
+    /**
+     * Writes the given responses and tombstones for the given removed paths
+     * into an archive file.
+     *
+     * @param target
+     * @param responses
+     *            responses with a buffered body by the path of their URL.
+     * @param removedPaths
+     *            paths removed since the snapshot the archive is a diff of.
+     * @throws IOException
+     * @see #getRemovedPaths()
+     */
+    public static void write(final File target, final Map<String, HttpResponse> responses,
+            final Collection<String> removedPaths) throws IOException {
+        final HttpResponse tombstone = new HttpResponse(HttpURLConnection.HTTP_OK, "");
+
+        // the table comes first, so its size is needed for the offsets
+        final Map<String, String> bodies = new HashMap<String, String>(responses.size() * 4 / 3 + 1);
+        final Map<String, byte[]> payloads = new HashMap<String, byte[]>(responses.size() * 4 / 3 + 1);
+        final ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        final DataOutputStream sizing = new DataOutputStream(tableBytes);
+        for (final Map.Entry<String, HttpResponse> response : responses.entrySet()) {
+            final String body = response.getValue().getResponse() != null ? response.getValue().getResponse() : "";
+            bodies.put(response.getKey(), body);
+            payloads.put(response.getKey(), body.getBytes(UTF8));
+            writeTableEntry(sizing, response.getKey(), response.getValue(), 0, 0);
+        }
+        for (final String path : removedPaths) {
+            writeTableEntry(sizing, path, tombstone, 0, REMOVED_OFFSET);
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(responses.size() + removedPaths.size());
+
+            long offset = 12 + tableBytes.size();
+            for (final Map.Entry<String, HttpResponse> response : responses.entrySet()) {
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot too large for an archive");
+                }
+                writeTableEntry(out, response.getKey(), response.getValue(), bodies.get(response.getKey())
+                        .hashCode(), (int) offset);
+                offset += 4 + payloads.get(response.getKey()).length;
+            }
+            for (final String path : removedPaths) {
+                writeTableEntry(out, path, tombstone, 0, REMOVED_OFFSET);
+            }
+
+            for (final String path : responses.keySet()) {
+                final byte[] payload = payloads.get(path);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeTableEntry(final DataOutputStream out, final String path, final HttpResponse response,
+            final int hashCode, final int offset) throws IOException {
+        out.writeUTF(path);
+        out.writeInt(hashCode);
+        out.writeInt(offset);
+        out.writeUTF(response.getETag() != null ? response.getETag() : "");
+        out.writeUTF(response.getLastModified() != null ? response.getLastModified() : "");
+    }
+
+    private static String emptyToNull(final String value) {
+        return value.length() > 0 ? value : null;
+    }
+
+    /**
+     * Returns the path used as the key of the given URL: the URL relative to
+     * the REST API base URL without a trailing slash.
+     *
+     * @param url
+     * @return
+     */
+    public static String getPath(final String url) {
+        String path = url.replace(RestApiFacadeImpl.REST_API_BASE_URL, "");
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the response stored for the given path.
+     *
+     * @param path
+     * @return the response or null if there's no response for the path.
+     */
+    public String get(final String path) {
+        final Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        final ByteBuffer payload = data.duplicate();
+        payload.position(entry.offset + 4);
+        payload.limit(entry.offset + 4 + data.getInt(entry.offset));
+        return UTF8.decode(payload).toString();
+    }
+
+    /**
+     * Returns the response stored for the given path with the validators the
+     * server originally sent, for making conditional requests to the server.
+     *
+     * @param path
+     * @return the response or null if there's no response for the path.
+     */
+    public HttpResponse getResponse(final String path) {
+        final Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        return new HttpResponse(HttpURLConnection.HTTP_OK, get(path), entry.eTag, entry.lastModified);
+    }
+
+    /**
+     * Returns the hash code of the response stored for the given path, without
+     * decoding the response.
+     *
+     * @param path
+     * @return the hash code or null if there's no response for the path.
+     */
+    public Integer getHashCode(final String path) {
+        final Entry entry = entries.get(path);
+        return entry != null ? entry.hashCode : null;
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Returns the paths this archive records as removed. Applying a diff
+     * archive onto the snapshot it is based on means replacing the responses
+     * of {@link #getPaths()} and dropping those of the removed paths.
+     *
+     * @return
+     */
+    public Set<String> getRemovedPaths() {
+        return removedPaths;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+
+        private final int hashCode;
+        private final int offset;
+        private final String eTag;
+        private final String lastModified;
+
+        public Entry(final int hashCode, final int offset, final String eTag, final String lastModified) {
+            this.hashCode = hashCode;
+            this.offset = offset;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a ByteBuffer from the given position.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(final ByteBuffer buffer, final int position) {
+            this.buffer = buffer;
+            buffer.position(position);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.vaadin.devoxx2k10.data.http.impl;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+
+/**
+ * An offline HttpClient serving the responses of a {@link SnapshotArchive}
+ * from memory. Behaves like {@link OfflineHttpClientMock}, including the empty
+ * response for URLs not in the snapshot, but reads the snapshot only once.
+ */
+public class SnapshotHttpClient implements HttpClient {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final SnapshotArchive archive;
+
+    /**
+     * Creates a client for the archive of the given snapshot on the
+     * classpath.
+     *
+     * @param prefix
+     * @throws IllegalArgumentException
+     *             if the archive can't be loaded.
+     */
+    public SnapshotHttpClient(final String prefix) {
+        try {
+            archive = SnapshotArchive.forPrefix(prefix);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Couldn't load snapshot " + prefix, e);
+        }
+    }
+
+    public SnapshotHttpClient(final SnapshotArchive archive) {
+        this.archive = archive;
+    }
+
+    public HttpResponse get(final String urlString) throws IOException {
+        return get(urlString, null);
+    }
+
+    /**
+     * Simulates conditional requests by using the stored hash of the response
+     * as the ETag, so that an unchanged response is not decoded at all.
+     */
+    public HttpResponse get(final String urlString, final HttpResponse previousResponse) throws IOException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("GET [snapshot]: " + urlString);
+        }
+
+        final String path = SnapshotArchive.getPath(urlString);
+        final Integer hashCode = archive.getHashCode(path);
+        final String eTag = "\"" + Integer.toHexString(hashCode != null ? hashCode : "".hashCode()) + "\"";
+
+        if (previousResponse != null && eTag.equals(previousResponse.getETag())) {
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_MODIFIED, (String) null, eTag, null);
+        }
+        final String json = hashCode != null ? archive.get(path) : "";
+        return new HttpResponse(HttpURLConnection.HTTP_OK, json, eTag, null);
+    }
+
+    public HttpResponse openStream(final String urlString, final HttpResponse previousResponse) throws IOException {
+        return get(urlString, previousResponse);
+    }
+
+    public int post(final String urlString, final String postData) throws IOException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("POST [snapshot]: " + urlString + ", " + postData);
+        }
+        if (urlString.endsWith("/rest/v1/events/users/validate")) {
+            return HttpURLConnection.HTTP_OK;
+        }
+        return HttpURLConnection.HTTP_CREATED;
+    }
+}
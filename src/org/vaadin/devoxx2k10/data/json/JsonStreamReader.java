@@ -0,0 +1,197 @@
+package org.vaadin.devoxx2k10.data.json;
+
+import java.io.Reader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Pull parser for reading JSON token by token from a stream without building
+ * JSONObject or JSONArray trees. Uses the JSONTokener of org.json for the
+ * low-level tokenizing.
+ *
+ * Arrays and objects are read with the begin/end methods and their elements
+ * are iterated with {@link #hasNext()}, for example:
+ *
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     ...
+ * }
+ * reader.endObject();
+ * </pre>
+ */
+public class JsonStreamReader {
+
+    private final JSONTokener tokener;
+
+    public JsonStreamReader(final Reader reader) {
+        this.tokener = new JSONTokener(reader);
+    }
+
+    /**
+     * Returns true if there is any more data to read.
+     *
+     * @return
+     * @throws JSONException
+     */
+    public boolean hasMoreData() throws JSONException {
+        final char c = tokener.nextClean();
+        if (c == 0) {
+            return false;
+        }
+        tokener.back();
+        return true;
+    }
+
+    public void beginArray() throws JSONException {
+        expect('[');
+    }
+
+    public void endArray() throws JSONException {
+        expect(']');
+    }
+
+    public void beginObject() throws JSONException {
+        expect('{');
+    }
+
+    public void endObject() throws JSONException {
+        expect('}');
+    }
+
+    /**
+     * Returns true if the current array or object has more elements. Consumes
+     * the separating comma if there is one.
+     *
+     * @return
+     * @throws JSONException
+     */
+    public boolean hasNext() throws JSONException {
+        final char c = tokener.nextClean();
+        if (c == ',') {
+            return true;
+        }
+        tokener.back();
+        return c != ']' && c != '}' && c != 0;
+    }
+
+    /**
+     * Reads the name of the next property of the current object.
+     *
+     * @return
+     * @throws JSONException
+     */
+    public String nextName() throws JSONException {
+        final char quote = tokener.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw tokener.syntaxError("Expected a property name");
+        }
+        final String name = tokener.nextString(quote);
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads the next value as a String. Numbers and booleans are converted to
+     * their String representation and null is returned as null.
+     *
+     * @return
+     * @throws JSONException
+     */
+    public String nextString() throws JSONException {
+        final char c = tokener.nextClean();
+        if (c == '"' || c == '\'') {
+            return tokener.nextString(c);
+        }
+        tokener.back();
+        final Object value = nextPrimitive();
+        return value == JSONObject.NULL ? null : value.toString();
+    }
+
+    public int nextInt() throws JSONException {
+        final Object value = nextPrimitiveOrString();
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (final NumberFormatException e) {
+            throw tokener.syntaxError("Expected an int but was " + value);
+        }
+    }
+
+    public boolean nextBoolean() throws JSONException {
+        final Object value = nextPrimitiveOrString();
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if ("true".equalsIgnoreCase(value.toString())) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value.toString())) {
+            return false;
+        }
+        throw tokener.syntaxError("Expected a boolean but was " + value);
+    }
+
+    /**
+     * Skips the next value including all of its nested arrays and objects.
+     *
+     * @throws JSONException
+     */
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        do {
+            final char c = tokener.nextClean();
+            switch (c) {
+            case 0:
+                throw tokener.syntaxError("Unexpected end of data");
+            case '{':
+            case '[':
+                depth++;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                break;
+            case '"':
+            case '\'':
+                tokener.nextString(c);
+                break;
+            case ',':
+            case ':':
+                break;
+            default:
+                tokener.back();
+                nextPrimitive();
+            }
+        } while (depth > 0);
+    }
+
+    private Object nextPrimitiveOrString() throws JSONException {
+        final char c = tokener.nextClean();
+        if (c == '"' || c == '\'') {
+            return tokener.nextString(c);
+        }
+        tokener.back();
+        return nextPrimitive();
+    }
+
+    private Object nextPrimitive() throws JSONException {
+        final char c = tokener.nextClean();
+        tokener.back();
+        if (c == '{' || c == '[') {
+            throw tokener.syntaxError("Expected a primitive value");
+        }
+        // no nested structures here, so nothing is built beyond the value
+        return tokener.nextValue();
+    }
+
+    private void expect(final char expected) throws JSONException {
+        final char c = tokener.nextClean();
+        if (c != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "' but was '" + c + "'");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.vaadin.devoxx2k10.ui.calendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.vaadin.devoxx2k10.util.IntList;
+
+import com.vaadin.addon.calendar.event.CalendarEvent;
+
+/**
+ * Immutable index of calendar events bucketed by day, so that the events of a
+ * date range are found by looking only at the events of the days in the range
+ * instead of all events.
+ *
+ * An event spanning several days is in the bucket of each of them. The
+ * results are the same as those of
+ * {@link com.vaadin.addon.calendar.event.BasicEventProvider#getEvents(Date, Date)}
+ * , including their order: all events overlapping the range, its end points
+ * included, in the order they were given.
+ */
+public class CalendarEventIndex {
+
+    private static final long DAY_IN_MS = 1000L * 60 * 60 * 24;
+
+    private final CalendarEvent[] events;
+    private final long[] startTimes;
+    private final long[] endTimes;
+
+    /** The bucket each event starts in */
+    private final long[] firstBuckets;
+
+    /** Offset aligning the buckets with the days of the local time zone */
+    private final long offsetInMs;
+
+    /** Sorted positions of the events in each bucket */
+    private final TreeMap<Long, int[]> buckets;
+
+    private CalendarEventIndex(final CalendarEvent[] events, final long offsetInMs) {
+        this.events = events;
+        this.offsetInMs = offsetInMs;
+        startTimes = new long[events.length];
+        endTimes = new long[events.length];
+        firstBuckets = new long[events.length];
+
+        final TreeMap<Long, IntList> lists = new TreeMap<Long, IntList>();
+        for (int i = 0; i < events.length; i++) {
+            startTimes[i] = events[i].getStart().getTime();
+            endTimes[i] = events[i].getEnd().getTime();
+            firstBuckets[i] = getBucket(Math.min(startTimes[i], endTimes[i]));
+            final long lastBucket = getBucket(Math.max(startTimes[i], endTimes[i]));
+            for (long bucket = firstBuckets[i]; bucket <= lastBucket; bucket++) {
+                IntList list = lists.get(bucket);
+                if (list == null) {
+                    list = new IntList();
+                    lists.put(bucket, list);
+                }
+                // positions are added in order, so the lists are sorted
+                list.add(i);
+            }
+        }
+
+        buckets = new TreeMap<Long, int[]>();
+        for (final Map.Entry<Long, IntList> entry : lists.entrySet()) {
+            buckets.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Builds an index of the given events with buckets of the days of the
+     * default time zone. The events must not change their times after this.
+     * 
+     * @param events
+     * @return
+     */
+    public static CalendarEventIndex build(final List<? extends CalendarEvent> events) {
+        return new CalendarEventIndex(events.toArray(new CalendarEvent[events.size()]), TimeZone.getDefault()
+                .getRawOffset());
+    }
+
+    /**
+     * Returns the events overlapping the given date range.
+     * 
+     * @param startDate
+     * @param endDate
+     * @return
+     */
+    public List<CalendarEvent> getEvents(final Date startDate, final Date endDate) {
+        final long from = startDate.getTime();
+        final long to = endDate.getTime();
+        if (to < from) {
+            return new ArrayList<CalendarEvent>(0);
+        }
+
+        final long firstBucket = getBucket(from);
+        final SortedMap<Long, int[]> range = buckets.subMap(firstBucket, getBucket(to) + 1);
+
+        int[] matches = new int[16];
+        int matchCount = 0;
+        for (final Map.Entry<Long, int[]> entry : range.entrySet()) {
+            final long bucket = entry.getKey();
+            for (final int position : entry.getValue()) {
+                // add an event spanning several buckets only in the first
+                // bucket of the range it's in
+                if (startTimes[position] <= to && endTimes[position] >= from
+                        && bucket == Math.max(firstBuckets[position], firstBucket)) {
+                    if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, matchCount * 2);
+                    }
+                    matches[matchCount++] = position;
+                }
+            }
+        }
+        if (range.size() > 1) {
+            // restore the original order of the events from several days
+            Arrays.sort(matches, 0, matchCount);
+        }
+
+        final List<CalendarEvent> result = new ArrayList<CalendarEvent>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            result.add(events[matches[i]]);
+        }
+        return result;
+    }
+
+    public int getEventCount() {
+        return events.length;
+    }
+
+    private long getBucket(final long time) {
+        final long localTime = time + offsetInMs;
+        // floor division to keep times before 1970 in the right bucket
+        return localTime >= 0 ? localTime / DAY_IN_MS : (localTime + 1) / DAY_IN_MS - 1;
+    }
+}
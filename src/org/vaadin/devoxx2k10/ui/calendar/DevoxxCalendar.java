@@ -11,6 +11,7 @@ import org.vaadin.devoxx2k10.DevoxxScheduleApplication;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser.UserFavouritesChangedListener;
+import org.vaadin.devoxx2k10.util.IntSet;
 
 import com.vaadin.Application.UserChangeEvent;
 import com.vaadin.Application.UserChangeListener;
@@ -120,7 +121,10 @@ public class DevoxxCalendar extends Calendar implements UserChangeListener, User
     }
 
     @Override
-    public void favouritesChanged(final MyScheduleUser user) {
-        refreshCalendarStyles();
+    public void favouritesChanged(final MyScheduleUser user, final IntSet addedIds,
+            final IntSet removedIds) {
+        if (getEventProvider() instanceof DevoxxEventProvider) {
+            ((DevoxxEventProvider) getEventProvider()).updateAttendingStyles(addedIds, removedIds);
+        }
     }
 }
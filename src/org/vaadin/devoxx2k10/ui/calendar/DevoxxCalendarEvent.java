@@ -1,21 +1,66 @@
 package org.vaadin.devoxx2k10.ui.calendar;
 
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.util.StringUtil;
 
-import com.vaadin.addon.calendar.event.BasicEvent;
+import com.vaadin.addon.calendar.event.CalendarEvent;
 
-public class DevoxxCalendarEvent extends BasicEvent {
+/**
+ * Immutable CalendarEvent of a {@link DevoxxPresentation}. The caption and the
+ * style names are computed once, and the events are shared by all sessions
+ * through {@link ScheduleEventModel}. The styles of a single session, such as
+ * the selected event, are added by copies made by {@link DevoxxEventProvider}.
+ */
+public class DevoxxCalendarEvent implements CalendarEvent {
 
     private static final long serialVersionUID = -5372113758406385246L;
 
-    private DevoxxPresentation devoxxEvent;
-    private Set<String> additionalStyles = new HashSet<String>();
-    private String speakers;
+    private static final long SHORT_EVENT_THRESHOLD_MS = 1000 * 60 * 30;
+
+    private final DevoxxPresentation devoxxEvent;
+    private final String caption;
+    private final String styleName;
+
+    /**
+     * Creates the event of the given presentation with the style names of its
+     * kind and room.
+     * 
+     * @param devoxxEvent
+     */
+    DevoxxCalendarEvent(final DevoxxPresentation devoxxEvent) {
+        this.devoxxEvent = devoxxEvent;
+        caption = devoxxEvent.getTitle() + " " + StringUtil.getSpeakersString(devoxxEvent);
+
+        final StringBuilder style = new StringBuilder(40);
+        style.append(devoxxEvent.getKind().name().toLowerCase());
+        style.append(" at-");
+        final String room = devoxxEvent.getRoom().toLowerCase();
+        for (int i = 0; i < room.length(); i++) {
+            final char c = room.charAt(i);
+            if (c != ' ' && c != '/') {
+                style.append(c);
+            }
+        }
+        if (devoxxEvent.getToTime().getTime() - devoxxEvent.getFromTime().getTime() < SHORT_EVENT_THRESHOLD_MS) {
+            style.append(" short-event");
+        }
+        styleName = style.toString();
+    }
+
+    /**
+     * Creates a copy of the given event with additional style names.
+     * 
+     * @param event
+     * @param additionalStyleNames
+     *            space separated style names.
+     */
+    DevoxxCalendarEvent(final DevoxxCalendarEvent event, final String additionalStyleNames) {
+        devoxxEvent = event.devoxxEvent;
+        caption = event.caption;
+        styleName = event.styleName + " " + additionalStyleNames;
+    }
 
     @Override
     public Date getStart() {
@@ -29,45 +74,44 @@ public class DevoxxCalendarEvent extends BasicEvent {
 
     @Override
     public String getCaption() {
-        if (speakers == null) {
-            speakers = StringUtil.getSpeakersString(devoxxEvent);
-        }
-        return devoxxEvent.getTitle() + " " + speakers;
+        return caption;
     }
 
-    public DevoxxPresentation getDevoxxEvent() {
-        return devoxxEvent;
+    @Override
+    public String getDescription() {
+        return null;
     }
 
-    public void setDevoxxEvent(final DevoxxPresentation devoxxEvent) {
-        this.devoxxEvent = devoxxEvent;
+    @Override
+    public String getStyleName() {
+        return styleName;
+    }
+
+    @Override
+    public boolean isAllDay() {
+        return false;
+    }
+
+    public DevoxxPresentation getDevoxxEvent() {
+        return devoxxEvent;
     }
 
     /**
-     * Overridden to allow multiple CSS class names.
+     * Events are equal if they are of the same presentation, whatever their
+     * style names.
      */
     @Override
-    public String getStyleName() {
-        final  StringBuilder sb = new StringBuilder(100);
-        sb.append(super.getStyleName());
-        for (String styleName : additionalStyles) {
-            sb.append(" ");
-            sb.append(styleName);
-        }
-        return sb.toString();
-    }
+    public boolean equals(final Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof DevoxxCalendarEvent))
+            return false;
 
-    public void addStyleName(final String styleName) {
-        boolean added = additionalStyles.add(styleName);
-        if (added) {
-            fireEventChange();
-        }
+        return devoxxEvent.equals(((DevoxxCalendarEvent) obj).devoxxEvent);
     }
 
-    public void removeStyleName(final String styleName) {
-        boolean removed = additionalStyles.remove(styleName);
-        if (removed) {
-            fireEventChange();
-        }
+    @Override
+    public int hashCode() {
+        return devoxxEvent.hashCode();
     }
 }
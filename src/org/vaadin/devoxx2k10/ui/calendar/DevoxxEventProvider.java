@@ -1,45 +1,80 @@
 package org.vaadin.devoxx2k10.ui.calendar;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.vaadin.devoxx2k10.DevoxxScheduleApplication;
 import org.vaadin.devoxx2k10.data.RestApiFacade;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.util.IntSet;
 
 import com.vaadin.addon.calendar.event.BasicEventProvider;
 import com.vaadin.addon.calendar.event.CalendarEvent;
 
+/**
+ * Provides the presentations of the schedule as calendar events.
+ *
+ * The events are shared by all sessions through {@link ScheduleEventModel}, so
+ * a session only keeps the selected presentation and the ids of the user's
+ * favourites. Events having the "selected" or "attending" style are replaced
+ * by styled copies when they are returned. The events added with
+ * {@link #addEvent(com.vaadin.addon.calendar.event.BasicEvent)} are not shown.
+ */
 public class DevoxxEventProvider extends BasicEventProvider {
 
     private static final long serialVersionUID = -6066313242075569496L;
 
     private transient final Logger logger = Logger.getLogger(getClass());
-    private boolean eventsLoaded;
     private DevoxxPresentation selectedEvent;
+    private IntSet attendingIds = new IntSet();
+    private Date prefetchedStartDate;
 
-    private static final long SHORT_EVENT_THRESHOLD_MS = 1000 * 60 * 30;
+    private transient RestApiFacade facade;
+    private transient ScheduleEventModel model;
+
+    /** Styled copies of the shared events of this session */
+    private transient Map<CalendarEvent, DevoxxCalendarEvent> styledEvents;
+
+    /**
+     * Creates a provider using the backend facade of the current application.
+     */
+    public DevoxxEventProvider() {
+        super();
+    }
+
+    /**
+     * Creates a provider using the given backend facade.
+     *
+     * @param facade
+     */
+    public DevoxxEventProvider(final RestApiFacade facade) {
+        this.facade = facade;
+    }
 
     @Override
     public List<CalendarEvent> getEvents(final Date startDate, final Date endDate) {
-        loadEventsFromBackendIfNeeded();
-
-        final List<CalendarEvent> result = super.getEvents(startDate, endDate);
+        final List<CalendarEvent> result = getModel().getEvents(startDate, endDate);
 
-        // Update the selected style name.
-        for (final CalendarEvent event : eventList) {
-            if (event instanceof DevoxxCalendarEvent) {
-                final DevoxxCalendarEvent devoxxCalEvent = ((DevoxxCalendarEvent) event);
-                if (devoxxCalEvent.getDevoxxEvent().equals(selectedEvent)) {
-                    devoxxCalEvent.addStyleName("selected");
-                } else {
-                    devoxxCalEvent.removeStyleName("selected");
+        final Map<CalendarEvent, DevoxxCalendarEvent> styled = getStyledEvents();
+        if (!styled.isEmpty()) {
+            for (int i = 0; i < result.size(); i++) {
+                final DevoxxCalendarEvent styledEvent = styled.get(result.get(i));
+                if (styledEvent != null) {
+                    result.set(i, styledEvent);
                 }
             }
         }
 
+        if (!startDate.equals(prefetchedStartDate)) {
+            prefetchDetails(result);
+            prefetchedStartDate = startDate;
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("Returning " + result.size() + " events for " + startDate + " - " + endDate);
         }
@@ -47,67 +82,184 @@ public class DevoxxEventProvider extends BasicEventProvider {
         return result;
     }
 
+    /**
+     * Requests the details of the given events to be loaded in advance, as
+     * the user is likely to open some of them.
+     */
+    private void prefetchDetails(final List<CalendarEvent> events) {
+        final List<DevoxxPresentation> presentations = new ArrayList<DevoxxPresentation>(events.size());
+        for (final CalendarEvent event : events) {
+            if (event instanceof DevoxxCalendarEvent) {
+                presentations.add(((DevoxxCalendarEvent) event).getDevoxxEvent());
+            }
+        }
+        getFacade().prefetchDetails(presentations);
+    }
+
     public CalendarEvent getEvent(final int id) {
-        loadEventsFromBackendIfNeeded();
+        final DevoxxCalendarEvent event = getModel().getEvent(id);
+        if (event != null) {
+            final DevoxxCalendarEvent styledEvent = getStyledEvents().get(event);
+            if (styledEvent != null) {
+                return styledEvent;
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Updates the attending styles for the user of the current application.
+     */
+    public void refreshAttendingStyles() {
+        refreshAttendingStyles(getCurrentUser());
+    }
+
+    /**
+     * Updates the attending styles for the given user.
+     *
+     * @param user
+     *            the user or null if no user is signed in.
+     */
+    public void refreshAttendingStyles(final MyScheduleUser user) {
+        if (updateAttendingIds(user)) {
+            styledEvents = null;
+            fireEventSetChange();
+        }
+    }
 
-        for (final CalendarEvent event : eventList) {
-            if (event instanceof DevoxxCalendarEvent && ((DevoxxCalendarEvent) event).getDevoxxEvent().getId() == id) {
-                return event;
+    /**
+     * Updates the attending styles of the given presentations only, notifying
+     * the calendar once about all of them.
+     *
+     * @param addedIds
+     *            ids of the presentations added to the favourites.
+     * @param removedIds
+     *            ids of the presentations removed from the favourites.
+     */
+    public void updateAttendingStyles(final IntSet addedIds, final IntSet removedIds) {
+        if (model == null) {
+            // the styles are set up from the user when the events are loaded
+            return;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < addedIds.size(); i++) {
+            if (attendingIds.add(addedIds.get(i))) {
+                restyle(model.getEvent(addedIds.get(i)));
+                changed = true;
+            }
+        }
+        for (int i = 0; i < removedIds.size(); i++) {
+            if (attendingIds.remove(removedIds.get(i))) {
+                restyle(model.getEvent(removedIds.get(i)));
+                changed = true;
             }
         }
 
-        return null;
+        if (changed) {
+            fireEventSetChange();
+        }
     }
 
-    public void refreshAttendingStyles() {
-        final MyScheduleUser user = (MyScheduleUser) DevoxxScheduleApplication.getCurrentInstance().getUser();
+    /**
+     * Returns true if the favourites of the given user differ from the ones
+     * currently styled.
+     */
+    private boolean updateAttendingIds(final MyScheduleUser user) {
+        final IntSet ids = user != null && user.getFavourites() != null ? new IntSet(user.getFavourites())
+                : new IntSet();
 
-        for (final CalendarEvent event : eventList) {
-            if (event instanceof DevoxxCalendarEvent) {
-                final DevoxxCalendarEvent devoxxEvent = (DevoxxCalendarEvent) event;
-                if (user != null && user.hasFavourited(devoxxEvent.getDevoxxEvent())) {
-                    devoxxEvent.addStyleName("attending");
-                } else {
-                    devoxxEvent.removeStyleName("attending");
-                }
+        if (ids.equals(attendingIds)) {
+            return false;
+        }
+        attendingIds = ids;
+        return true;
+    }
+
+    /**
+     * Sets the selected presentation without notifying the calendar, as the
+     * selected style is set on the client-side when an event is clicked. The
+     * new styles are returned on the next repaint, so a caller selecting the
+     * presentation otherwise must request a repaint of the calendar.
+     *
+     * @param event
+     */
+    public void setSelectedPresentation(final DevoxxPresentation event) {
+        if (event == null ? selectedEvent != null : !event.equals(selectedEvent)) {
+            final DevoxxPresentation previous = selectedEvent;
+            selectedEvent = event;
+            if (model != null) {
+                restyle(model.getEvent(previous));
+                restyle(model.getEvent(event));
+            }
+        }
+    }
+
+    /**
+     * Returns the styled copies of the events of the selected presentation and
+     * the user's favourites by the shared events, creating them if needed.
+     */
+    private Map<CalendarEvent, DevoxxCalendarEvent> getStyledEvents() {
+        if (styledEvents == null) {
+            final ScheduleEventModel currentModel = getModel();
+            styledEvents = new IdentityHashMap<CalendarEvent, DevoxxCalendarEvent>();
+            for (int i = 0; i < attendingIds.size(); i++) {
+                restyle(currentModel.getEvent(attendingIds.get(i)));
             }
+            restyle(currentModel.getEvent(selectedEvent));
         }
+        return styledEvents;
     }
 
-    private void loadEventsFromBackendIfNeeded() {
-        if (eventsLoaded) {
-            // already loaded -> do nothing
+    /**
+     * Replaces the styled copy of the given shared event according to the
+     * current selection and favourites.
+     */
+    private void restyle(final DevoxxCalendarEvent event) {
+        if (event == null || styledEvents == null) {
+            // created with the right styles when needed
             return;
         }
 
-        final RestApiFacade facade = DevoxxScheduleApplication.getCurrentInstance().getBackendFacade();
-        final List<DevoxxPresentation> schedule = facade.getFullSchedule();
+        final int id = event.getDevoxxEvent().getId();
+        final boolean attending = id > 0 && attendingIds.contains(id);
+        final boolean selected = event.getDevoxxEvent().equals(selectedEvent);
+        if (attending && selected) {
+            styledEvents.put(event, new DevoxxCalendarEvent(event, "attending selected"));
+        } else if (attending) {
+            styledEvents.put(event, new DevoxxCalendarEvent(event, "attending"));
+        } else if (selected) {
+            styledEvents.put(event, new DevoxxCalendarEvent(event, "selected"));
+        } else {
+            styledEvents.remove(event);
+        }
+    }
 
-        // wrap data from the model into CalendarEvents for UI
-        for (final DevoxxPresentation event : schedule) {
-            final DevoxxCalendarEvent calEvent = new DevoxxCalendarEvent();
-            calEvent.setStyleName(event.getKind().name().toLowerCase());
-            calEvent.addStyleName("at-" + event.getRoom().toLowerCase().replaceAll(" ", "").replaceAll("/", ""));
-            if (isShortEvent(event)) {
-                calEvent.addStyleName("short-event");
-            }
-            calEvent.setDevoxxEvent(event);
-            calEvent.addListener(this);
-            super.addEvent(calEvent);
+    private ScheduleEventModel getModel() {
+        if (model != null) {
+            return model;
         }
-        eventsLoaded = true;
-        refreshAttendingStyles();
+
+        final List<DevoxxPresentation> schedule = getFacade().getFullSchedule();
+        model = ScheduleEventModel.forSchedule(schedule);
+        styledEvents = null;
+        updateAttendingIds(getCurrentUser());
 
         if (logger.isDebugEnabled()) {
-            logger.debug("Fetched schedule from backend (total " + schedule.size() + " events).");
+            logger.debug("Fetched schedule from backend (total " + model.getEventCount() + " events).");
         }
+        return model;
     }
 
-    private static boolean isShortEvent(final DevoxxPresentation event) {
-        return event.getToTime().getTime() - event.getFromTime().getTime() < SHORT_EVENT_THRESHOLD_MS;
+    private RestApiFacade getFacade() {
+        if (facade == null) {
+            facade = DevoxxScheduleApplication.getCurrentInstance().getBackendFacade();
+        }
+        return facade;
     }
 
-    public void setSelectedPresentation(final DevoxxPresentation event) {
-        selectedEvent = event;
+    private static MyScheduleUser getCurrentUser() {
+        final DevoxxScheduleApplication app = DevoxxScheduleApplication.getCurrentInstance();
+        return app != null ? (MyScheduleUser) app.getUser() : null;
     }
 }
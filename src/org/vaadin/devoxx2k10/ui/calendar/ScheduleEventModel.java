@@ -0,0 +1,109 @@
+package org.vaadin.devoxx2k10.ui.calendar;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+
+import com.vaadin.addon.calendar.event.CalendarEvent;
+
+/**
+ * Immutable calendar events of a schedule with their day index, built once
+ * per schedule version and shared by the {@link DevoxxEventProvider}s of all
+ * sessions.
+ */
+class ScheduleEventModel {
+
+    private static volatile ScheduleEventModel current;
+
+    private final List<DevoxxPresentation> schedule;
+    private final DevoxxCalendarEvent[] events;
+    private final Map<Integer, DevoxxCalendarEvent> eventsById;
+    private final CalendarEventIndex index;
+
+    private ScheduleEventModel(final List<DevoxxPresentation> schedule) {
+        this.schedule = schedule;
+        events = new DevoxxCalendarEvent[schedule.size()];
+        eventsById = new HashMap<Integer, DevoxxCalendarEvent>(events.length * 4 / 3 + 1);
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new DevoxxCalendarEvent(schedule.get(i));
+            if (!eventsById.containsKey(schedule.get(i).getId())) {
+                eventsById.put(schedule.get(i).getId(), events[i]);
+            }
+        }
+        index = CalendarEventIndex.build(Arrays.asList(events));
+    }
+
+    /**
+     * Returns the model of the given schedule, building it if the schedule
+     * isn't the one the current model was built from.
+     * 
+     * @param schedule
+     * @return
+     */
+    public static ScheduleEventModel forSchedule(final List<DevoxxPresentation> schedule) {
+        ScheduleEventModel model = current;
+        if (model == null || model.schedule != schedule) {
+            // sessions loading a new schedule at the same time may each build
+            // a model, which is harmless
+            model = new ScheduleEventModel(schedule);
+            current = model;
+        }
+        return model;
+    }
+
+    /**
+     * Returns the events overlapping the given date range in a new list that
+     * may be modified.
+     * 
+     * @param startDate
+     * @param endDate
+     * @return
+     */
+    public List<CalendarEvent> getEvents(final Date startDate, final Date endDate) {
+        return index.getEvents(startDate, endDate);
+    }
+
+    /**
+     * Returns the event of the presentation with the given id or null if
+     * there's no such presentation.
+     * 
+     * @param id
+     * @return
+     */
+    public DevoxxCalendarEvent getEvent(final int id) {
+        return eventsById.get(id);
+    }
+
+    /**
+     * Returns the event of the given presentation or null if it's not in the
+     * schedule.
+     * 
+     * @param presentation
+     * @return
+     */
+    public DevoxxCalendarEvent getEvent(final DevoxxPresentation presentation) {
+        if (presentation == null) {
+            return null;
+        }
+        final DevoxxCalendarEvent indexed = eventsById.get(presentation.getId());
+        if (indexed != null && indexed.getDevoxxEvent().equals(presentation)) {
+            return indexed;
+        }
+
+        // events without an id (breaks, registration etc.) share the id 0
+        for (final DevoxxCalendarEvent event : events) {
+            if (event.getDevoxxEvent().equals(presentation)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    public int getEventCount() {
+        return events.length;
+    }
+}
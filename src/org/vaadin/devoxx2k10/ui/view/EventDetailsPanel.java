@@ -1,16 +1,13 @@
 package org.vaadin.devoxx2k10.ui.view;
 
-import java.text.SimpleDateFormat;
-
 import org.vaadin.addthis.AddThis;
 import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.DevoxxScheduleApplication;
-import org.vaadin.devoxx2k10.data.RestApiException;
-import org.vaadin.devoxx2k10.data.RestApiFacade;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
 import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
 import org.vaadin.devoxx2k10.ui.calendar.DevoxxCalendarEvent;
+import org.vaadin.devoxx2k10.util.DateUtil;
 import org.vaadin.devoxx2k10.util.StringUtil;
 
 import com.vaadin.Application.UserChangeEvent;
@@ -25,7 +22,6 @@ import com.vaadin.ui.VerticalLayout;
 import com.vaadin.ui.Window;
 import com.vaadin.ui.Window.CloseEvent;
 import com.vaadin.ui.Window.CloseListener;
-import com.vaadin.ui.Window.Notification;
 import com.vaadin.ui.themes.BaseTheme;
 
 /**
@@ -190,10 +186,8 @@ public class EventDetailsPanel extends Panel implements Button.ClickListener, Us
      * @return
      */
     private String getEventTimeLabel(final DevoxxPresentation presentation) {
-        final SimpleDateFormat dateFormatFrom = new SimpleDateFormat("EEEEE, HH:mm");
-        final SimpleDateFormat dateFormatTo = new SimpleDateFormat("HH:mm");
-
-        return dateFormatFrom.format(presentation.getFromTime()) + " - " + dateFormatTo.format(presentation.getToTime())
+        return DateUtil.formatDayAndTime(presentation.getFromTime()) + " - "
+                + DateUtil.formatTime(presentation.getToTime())
                 + " (" + StringUtil.getEventDuration(presentation) + ")";
     }
 
@@ -288,27 +282,23 @@ public class EventDetailsPanel extends Panel implements Button.ClickListener, Us
             if (clickedButton == removeFromFavouritesButton) {
                 addToFavourites = false;
             }
-            try {
-                if (addToFavourites) {
-                    user.addFavourite(event.getDevoxxEvent());
-                } else {
-                    user.removeFavourite(event.getDevoxxEvent());
-                }
+            if (addToFavourites) {
+                user.addFavourite(event.getDevoxxEvent());
+            } else {
+                user.removeFavourite(event.getDevoxxEvent());
+            }
 
-                final RestApiFacade facade = DevoxxScheduleApplication.getCurrentInstance().getBackendFacade();
-                facade.saveMySchedule(user);
+            // saved in the background, failures are shown on a later request
+            final DevoxxScheduleApplication app = DevoxxScheduleApplication.getCurrentInstance();
+            app.getBackendFacade().saveMyScheduleLater(user, app);
 
-                if (addToFavourites) {
-                    event.addStyleName("attending");
-                    DevoxxScheduleApplication.trackPageview("attend", event.getDevoxxEvent());
-                } else {
-                    event.removeStyleName("attending");
-                    DevoxxScheduleApplication.trackPageview("unattend", event.getDevoxxEvent());
-                }
-                updateFavouriteButtons();
-            } catch (final RestApiException e) {
-                getWindow().showNotification(e.getMessage(), Notification.TYPE_ERROR_MESSAGE);
+            // the calendar restyles the event when the favourites change
+            if (addToFavourites) {
+                DevoxxScheduleApplication.trackPageview("attend", event.getDevoxxEvent());
+            } else {
+                DevoxxScheduleApplication.trackPageview("unattend", event.getDevoxxEvent());
             }
+            updateFavouriteButtons();
         }
     }
 
@@ -4,6 +4,7 @@ import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.DevoxxScheduleApplication;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
 import org.vaadin.devoxx2k10.data.domain.MyScheduleUser.UserFavouritesChangedListener;
+import org.vaadin.devoxx2k10.util.IntSet;
 
 import com.vaadin.Application;
 import com.vaadin.Application.UserChangeEvent;
@@ -124,7 +125,8 @@ public class UserLayout extends CssLayout implements ClickListener, UserChangeLi
     }
 
     @Override
-    public void favouritesChanged(final MyScheduleUser user) {
+    public void favouritesChanged(final MyScheduleUser user, final IntSet addedIds,
+            final IntSet removedIds) {
         updateFavouriteCount();
     }
 }
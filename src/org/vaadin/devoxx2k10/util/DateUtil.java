@@ -0,0 +1,115 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe parsing and formatting of the timestamps used by the Devoxx REST
+ * API and the UI.
+ *
+ * Dates are handed out as canonical {@link ImmutableDate} instances: the
+ * schedule only has a few dozen distinct slot boundaries, so a repeated
+ * timestamp is neither parsed nor allocated again, and the same instance can
+ * safely be shared by all sessions.
+ *
+ * The formats are those of the default time zone and locale when this class is
+ * loaded.
+ */
+public class DateUtil {
+
+    /** Timestamp format of the Devoxx REST API */
+    public static final String DEVOXX_JSON_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * Upper bound for the canonical dates so that unexpected data can't grow
+     * the caches without limit. Dates beyond it are still created, just not
+     * cached.
+     */
+    private static final int MAX_CACHED_DATES = 1024;
+
+    private static final TimestampFormat format = new TimestampFormat(TimeZone.getDefault(), Locale.getDefault());
+
+    private static final ConcurrentMap<String, Date> parsedDates = new ConcurrentHashMap<String, Date>();
+
+    private static final ConcurrentMap<Long, Date> canonicalDates = new ConcurrentHashMap<Long, Date>();
+
+    /**
+     * Parses a timestamp in the format of the Devoxx REST API.
+     *
+     * @param timestamp
+     * @return an {@link ImmutableDate}.
+     * @throws ParseException
+     *             if the timestamp isn't in the expected format.
+     */
+    public static Date parseJsonDate(final String timestamp) throws ParseException {
+        Date date = parsedDates.get(timestamp);
+        if (date == null) {
+            date = getDate(format.parse(timestamp));
+            if (parsedDates.size() < MAX_CACHED_DATES) {
+                parsedDates.putIfAbsent(timestamp, date);
+            }
+        }
+        return date;
+    }
+
+    /**
+     * Returns the canonical {@link ImmutableDate} for the given time.
+     *
+     * @param time
+     *            the time in milliseconds.
+     * @return
+     */
+    public static Date getDate(final long time) {
+        final Long key = time;
+        Date date = canonicalDates.get(key);
+        if (date == null) {
+            date = new ImmutableDate(time);
+            if (canonicalDates.size() < MAX_CACHED_DATES) {
+                final Date existing = canonicalDates.putIfAbsent(key, date);
+                if (existing != null) {
+                    date = existing;
+                }
+            }
+        }
+        return date;
+    }
+
+    /**
+     * Returns the canonical {@link ImmutableDate} for the given Date, or the
+     * Date itself if it already is immutable.
+     *
+     * @param date
+     * @return
+     */
+    public static Date getDate(final Date date) {
+        if (date instanceof ImmutableDate) {
+            return date;
+        }
+        return getDate(date.getTime());
+    }
+
+    /**
+     * Formats the given Date as the day of week and time (for example
+     * "Wednesday, 09:30").
+     *
+     * @param date
+     * @return
+     */
+    public static String formatDayAndTime(final Date date) {
+        return format.formatDayAndTime(date.getTime());
+    }
+
+    /**
+     * Formats the time of the given Date (for example "09:30").
+     *
+     * @param date
+     * @return
+     */
+    public static String formatTime(final Date date) {
+        return format.formatTime(date.getTime());
+    }
+}
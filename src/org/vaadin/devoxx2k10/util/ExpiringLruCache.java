@@ -0,0 +1,257 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe cache with an optional maximum size and an optional time to
+ * live per entry. When the cache is full the least recently used entry is
+ * evicted, and entries older than the time to live are removed when they are
+ * accessed.
+ *
+ * The atomic operations follow the semantics of
+ * {@link java.util.concurrent.ConcurrentMap}. Hits, misses, evictions and
+ * expirations are counted for monitoring.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLiveInMs;
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize
+     *            maximum number of entries or 0 for an unbounded cache.
+     * @param timeToLiveInMs
+     *            time to live of each entry since it was put into the cache or
+     *            0 if the entries don't expire.
+     */
+    public ExpiringLruCache(final int maxSize, final long timeToLiveInMs) {
+        if (maxSize < 0 || timeToLiveInMs < 0) {
+            throw new IllegalArgumentException("maxSize and timeToLiveInMs must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveInMs = timeToLiveInMs;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 4766420541004707366L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, CacheEntry<V>> eldest) {
+                if (ExpiringLruCache.this.maxSize > 0 && size() > ExpiringLruCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value for the given key or null if it's not cached or has
+     * expired.
+     *
+     * @param key
+     * @return
+     */
+    public synchronized V get(final K key) {
+        final CacheEntry<V> entry = getEntry(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Returns the value for the given key like {@link #get(Object)} but
+     * without counting it as a hit or miss.
+     *
+     * @param key
+     * @return
+     */
+    public synchronized V peek(final K key) {
+        final CacheEntry<V> entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized void put(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        entries.put(key, new CacheEntry<V>(value, currentTimeMillis()));
+    }
+
+    /**
+     * Puts the value to the cache unless there already is a value for the key.
+     *
+     * @param key
+     * @param value
+     * @return the existing value or null if the value was put to the cache.
+     */
+    public synchronized V putIfAbsent(final K key, final V value) {
+        final CacheEntry<V> entry = getEntry(key);
+        if (entry != null) {
+            return entry.value;
+        }
+        put(key, value);
+        return null;
+    }
+
+    /**
+     * Replaces the value of the key only if it's currently the given old
+     * value. The time to live of the entry starts again.
+     *
+     * @param key
+     * @param oldValue
+     * @param newValue
+     * @return true if the value was replaced.
+     */
+    public synchronized boolean replace(final K key, final V oldValue, final V newValue) {
+        final CacheEntry<V> entry = getEntry(key);
+        if (entry != null && entry.value.equals(oldValue)) {
+            put(key, newValue);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized V remove(final K key) {
+        final CacheEntry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Removes the key only if it's currently mapped to the given value.
+     *
+     * @param key
+     * @param value
+     * @return true if the key was removed.
+     */
+    public synchronized boolean remove(final K key, final V value) {
+        final CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.value.equals(value)) {
+            entries.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a snapshot of the keys from the least to the most recently
+     * used. Expired entries are removed first.
+     *
+     * @return
+     */
+    public synchronized List<K> keys() {
+        final long now = currentTimeMillis();
+        final List<K> keys = new ArrayList<K>(entries.size());
+        for (final Iterator<Map.Entry<K, CacheEntry<V>>> i = entries.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry<K, CacheEntry<V>> entry = i.next();
+            if (isExpired(entry.getValue(), now)) {
+                i.remove();
+                expirationCount++;
+            } else {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries removed because the cache was full.
+     *
+     * @return
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries removed because their time to live was
+     * exceeded.
+     *
+     * @return
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + entries.size() + "/" + (maxSize > 0 ? maxSize : "unbounded") + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + ", expirations=" + expirationCount;
+    }
+
+    /**
+     * Returns the current time used for the time to live. Can be overridden
+     * for testing.
+     *
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private CacheEntry<V> getEntry(final K key) {
+        final CacheEntry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry, currentTimeMillis())) {
+            entries.remove(key);
+            expirationCount++;
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean isExpired(final CacheEntry<V> entry, final long now) {
+        return timeToLiveInMs > 0 && now - entry.created >= timeToLiveInMs;
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long created;
+
+        public CacheEntry(final V value, final long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.util.Date;
+
+/**
+ * Date that can't be modified, so that one instance can be shared by all
+ * sessions and threads. The setters throw an
+ * {@link UnsupportedOperationException}; {@link #clone()} returns a plain,
+ * modifiable Date for the callers that need to compute with the value.
+ *
+ * Instances are created through {@link DateUtil#getDate(long)}.
+ */
+public final class ImmutableDate extends Date {
+
+    private static final long serialVersionUID = 4904517826547093180L;
+
+    ImmutableDate(final long time) {
+        super(time);
+    }
+
+    @Override
+    public void setTime(final long time) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setYear(final int year) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setMonth(final int month) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setDate(final int date) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setHours(final int hours) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setMinutes(final int minutes) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    @Deprecated
+    public void setSeconds(final int seconds) {
+        throw new UnsupportedOperationException("ImmutableDate can't be modified");
+    }
+
+    @Override
+    public Object clone() {
+        return new Date(getTime());
+    }
+}
@@ -0,0 +1,77 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, for collecting values such as schedule positions
+ * without boxing them before they are copied into an array with
+ * {@link #toArray()}. Not thread-safe.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param initialCapacity
+     */
+    public IntList(final int initialCapacity) {
+        values = new int[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Adds the given value to the end of the list.
+     *
+     * @param value
+     */
+    public void add(final int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Adds the given value to the end of the list unless it's equal to the
+     * last value, which keeps a list of ascending values free of duplicates.
+     *
+     * @param value
+     */
+    public void addIfNotLast(final int value) {
+        if (size == 0 || values[size - 1] != value) {
+            add(value);
+        }
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param index
+     * @return
+     */
+    public int get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values in the order they were added.
+     *
+     * @return
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,142 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Set of ints kept in a sorted array, for small sets such as the favourites of
+ * a user. Values are never boxed: membership is a binary search, and the
+ * values are iterated in ascending order by index with {@link #get(int)}.
+ *
+ * Adding and removing shift the array, so this is not meant for sets of more
+ * than some thousands of values. Not thread-safe.
+ */
+public class IntSet implements Serializable {
+
+    private static final long serialVersionUID = -2817449373126424436L;
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values;
+    private int size;
+
+    public IntSet() {
+        values = EMPTY;
+    }
+
+    /**
+     * Creates a set containing the values of the given set.
+     *
+     * @param other
+     */
+    public IntSet(final IntSet other) {
+        values = Arrays.copyOf(other.values, other.size);
+        size = other.size;
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @param value
+     * @return true if the value wasn't in the set already.
+     */
+    public boolean add(final int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size * 2));
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the given value.
+     *
+     * @param value
+     * @return true if the value was in the set.
+     */
+    public boolean remove(final int value) {
+        final int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public boolean contains(final int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * Returns the value at the given index, the values being in ascending
+     * order.
+     *
+     * @param index
+     * @return
+     */
+    public int get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the values in ascending order.
+     *
+     * @return
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IntSet)) {
+            return false;
+        }
+        final IntSet other = (IntSet) obj;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (values[i] != other.values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + values[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,48 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces the requests of all threads evenly to stay within the given number of
+ * requests per second. Thread-safe.
+ */
+public class RateLimiter {
+
+    private final long intervalInNanos;
+    private long nextRequestNanos = System.nanoTime();
+
+    /**
+     * Creates a new rate limiter. The first request is allowed immediately.
+     *
+     * @param requestsPerSecond
+     *            maximum number of requests per second or 0 for no limit.
+     */
+    public RateLimiter(final int requestsPerSecond) {
+        intervalInNanos = requestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / requestsPerSecond : 0;
+    }
+
+    /**
+     * Waits until the next request is allowed by the rate limit.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalInNanos == 0) {
+            return;
+        }
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            // compare the difference, as nanoTime may overflow
+            if (nextRequestNanos - now < 0) {
+                nextRequestNanos = now;
+            }
+            waitNanos = nextRequestNanos - now;
+            nextRequestNanos += intervalInNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.vaadin.devoxx2k10.util;
+
+import java.text.DateFormatSymbols;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parser and formatter for the fixed timestamp patterns of the application:
+ * <code>yyyy-MM-dd HH:mm:ss.SSS</code> of the Devoxx REST API and
+ * <code>EEEE, HH:mm</code> and <code>HH:mm</code> of the UI.
+ *
+ * Unlike SimpleDateFormat this works on milliseconds directly, without a
+ * Calendar, and is immutable, so one instance can be shared by all threads.
+ */
+public final class TimestampFormat {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /** Length of the timestamp up to the fraction of a second */
+    private static final int SECONDS_END = "yyyy-MM-dd HH:mm:ss".length();
+
+    private final TimeZone timeZone;
+    private final String[] weekdays;
+
+    /**
+     * Creates a format for the given time zone using the weekday names of the
+     * given locale.
+     *
+     * @param timeZone
+     * @param locale
+     */
+    public TimestampFormat(final TimeZone timeZone, final Locale locale) {
+        // TimeZone is mutable, keep a copy of our own
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.weekdays = DateFormatSymbols.getInstance(locale).getWeekdays();
+    }
+
+    /**
+     * Parses a timestamp in the format of the Devoxx REST API (for example
+     * "2010-11-17 09:30:00.0").
+     *
+     * @param timestamp
+     * @return the timestamp in milliseconds.
+     * @throws ParseException
+     *             if the timestamp isn't in the expected format.
+     */
+    public long parse(final String timestamp) throws ParseException {
+        if (timestamp.length() < SECONDS_END + 2 || timestamp.length() > SECONDS_END + 4) {
+            throw new ParseException("Unparseable timestamp: \"" + timestamp + "\"", 0);
+        }
+        expect(timestamp, 4, '-');
+        expect(timestamp, 7, '-');
+        expect(timestamp, 10, ' ');
+        expect(timestamp, 13, ':');
+        expect(timestamp, 16, ':');
+        expect(timestamp, SECONDS_END, '.');
+
+        final int year = parseNumber(timestamp, 0, 4);
+        final int month = parseNumber(timestamp, 5, 7);
+        final int day = parseNumber(timestamp, 8, 10);
+        final int hours = parseNumber(timestamp, 11, 13);
+        final int minutes = parseNumber(timestamp, 14, 16);
+        final int seconds = parseNumber(timestamp, 17, 19);
+        final int millis = parseNumber(timestamp, SECONDS_END + 1, timestamp.length());
+
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hours > 23 || minutes > 59 || seconds > 59) {
+            throw new ParseException("Unparseable timestamp: \"" + timestamp + "\"", 0);
+        }
+
+        final long localTime = daysFromCivil(year, month, day) * DAY + hours * HOUR + minutes * MINUTE + seconds
+                * 1000L + millis;
+
+        // Guess the offset from the raw offset and resolve it once more in case
+        // the guess was on the other side of a daylight saving transition.
+        final int guess = timeZone.getOffset(localTime - timeZone.getRawOffset());
+        return localTime - timeZone.getOffset(localTime - guess);
+    }
+
+    /**
+     * Formats the given time as the day of week and time (for example
+     * "Wednesday, 09:30").
+     *
+     * @param time
+     *            the time in milliseconds.
+     * @return
+     */
+    public String formatDayAndTime(final long time) {
+        final long localTime = time + timeZone.getOffset(time);
+        final long days = floorDiv(localTime, DAY);
+        // 1.1.1970 was a Thursday, the weekdays are indexed from Sunday = 1
+        final String weekday = weekdays[(int) ((days + 4) % 7 + 7) % 7 + 1];
+
+        final StringBuilder result = new StringBuilder(weekday.length() + 7);
+        result.append(weekday).append(", ");
+        appendTime(result, localTime - days * DAY);
+        return result.toString();
+    }
+
+    /**
+     * Formats the time of day of the given time (for example "09:30").
+     *
+     * @param time
+     *            the time in milliseconds.
+     * @return
+     */
+    public String formatTime(final long time) {
+        final long localTime = time + timeZone.getOffset(time);
+        final StringBuilder result = new StringBuilder(5);
+        appendTime(result, localTime - floorDiv(localTime, DAY) * DAY);
+        return result.toString();
+    }
+
+    private static void appendTime(final StringBuilder result, final long timeOfDay) {
+        final int hours = (int) (timeOfDay / HOUR);
+        final int minutes = (int) (timeOfDay % HOUR / MINUTE);
+        result.append((char) ('0' + hours / 10)).append((char) ('0' + hours % 10)).append(':');
+        result.append((char) ('0' + minutes / 10)).append((char) ('0' + minutes % 10));
+    }
+
+    private static void expect(final String timestamp, final int index, final char expected) throws ParseException {
+        if (timestamp.charAt(index) != expected) {
+            throw new ParseException("Unparseable timestamp: \"" + timestamp + "\"", index);
+        }
+    }
+
+    private static int parseNumber(final String timestamp, final int start, final int end) throws ParseException {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final char c = timestamp.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new ParseException("Unparseable timestamp: \"" + timestamp + "\"", i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1.1.1970 to the given date of the
+     * proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(final long x, final long y) {
+        final long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+}
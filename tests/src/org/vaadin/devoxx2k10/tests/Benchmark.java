@@ -0,0 +1,63 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal harness for the micro-benchmarks run from their main methods. Runs
+ * the operation for a number of warm-up iterations and then reports the
+ * average time and the average number of bytes allocated per operation.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    private volatile Object sink;
+
+    public Benchmark(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * The measured operation. The result is kept so that the JIT can't
+     * eliminate the work.
+     * 
+     * @return
+     * @throws Exception
+     */
+    protected abstract Object run() throws Exception;
+
+    public void execute(final int warmupIterations, final int iterations) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            sink = run();
+        }
+
+        final long allocatedBefore = getAllocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocatedAfter = getAllocatedBytes();
+
+        final StringBuilder result = new StringBuilder(100);
+        result.append(String.format("%-45s %12.2f us/op", name, elapsed / 1000.0 / iterations));
+        if (allocatedBefore >= 0) {
+            result.append(String.format(" %14d bytes/op", (allocatedAfter - allocatedBefore) / iterations));
+        }
+        System.out.println(result);
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread or -1 if
+     * the JVM doesn't support measuring it.
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+        }
+        return -1;
+    }
+}
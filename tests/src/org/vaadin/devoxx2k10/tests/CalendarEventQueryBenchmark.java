@@ -0,0 +1,66 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.Date;
+
+import org.vaadin.devoxx2k10.ui.calendar.CalendarEventIndex;
+
+import com.vaadin.addon.calendar.event.BasicEvent;
+import com.vaadin.addon.calendar.event.BasicEventProvider;
+
+/**
+ * Compares finding the events of one day by filtering all events, as
+ * BasicEventProvider does, against the day-bucketed CalendarEventIndex. The
+ * synthetic conference runs for a week in 12 rooms with a talk starting every
+ * 30 minutes from 9 to 19.
+ */
+public class CalendarEventQueryBenchmark {
+
+    private static final long MINUTE = 1000L * 60;
+    private static final long DAY = MINUTE * 60 * 24;
+    private static final long FIRST_DAY = 1290380400000L;
+
+    private static final int DAYS = 7;
+    private static final int ROOMS = 12;
+
+    public static void main(final String[] args) throws Exception {
+        final BasicEventProvider provider = new BasicEventProvider();
+        for (int day = 0; day < DAYS; day++) {
+            for (int room = 0; room < ROOMS; room++) {
+                for (long start = 9 * 60; start < 19 * 60; start += 30) {
+                    final BasicEvent event = new BasicEvent();
+                    event.setStart(new Date(FIRST_DAY + day * DAY + start * MINUTE));
+                    event.setEnd(new Date(FIRST_DAY + day * DAY + (start + 50) * MINUTE));
+                    provider.addEvent(event);
+                }
+            }
+        }
+        final CalendarEventIndex index = CalendarEventIndex.build(provider.getEvents(new Date(0), new Date(
+                Long.MAX_VALUE)));
+        final Date dayStart = new Date(FIRST_DAY + 3 * DAY);
+        final Date dayEnd = new Date(FIRST_DAY + 4 * DAY - 1);
+
+        System.out.println(index.getEventCount() + " events, "
+                + index.getEvents(dayStart, dayEnd).size() + " on the queried day");
+
+        new Benchmark("BasicEventProvider.getEvents (one day)") {
+            @Override
+            protected Object run() {
+                return provider.getEvents(dayStart, dayEnd);
+            }
+        }.execute(50000, 50000);
+
+        new Benchmark("CalendarEventIndex.getEvents (one day)") {
+            @Override
+            protected Object run() {
+                return index.getEvents(dayStart, dayEnd);
+            }
+        }.execute(50000, 50000);
+
+        new Benchmark("CalendarEventIndex.build") {
+            @Override
+            protected Object run() {
+                return CalendarEventIndex.build(provider.getEvents(new Date(0), new Date(Long.MAX_VALUE)));
+            }
+        }.execute(200, 1000);
+    }
+}
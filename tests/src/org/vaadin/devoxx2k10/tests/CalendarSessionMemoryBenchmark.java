@@ -0,0 +1,70 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacade;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+import org.vaadin.devoxx2k10.ui.calendar.DevoxxEventProvider;
+
+/**
+ * Measures the heap retained by the calendar events of 1000 sessions, each
+ * having looked at one day of the schedule, selected a presentation and
+ * marked ten presentations as favourites.
+ */
+public class CalendarSessionMemoryBenchmark {
+
+    private static final int SESSIONS = 1000;
+
+    public static void main(final String[] args) throws Exception {
+        Configuration.loadConfigurationFile("/test.properties");
+        Logger.getRootLogger().setLevel(Level.WARN);
+        final RestApiFacade facade = new RestApiFacadeImpl(new OfflineHttpClientMock("20101112110640"));
+        final List<DevoxxPresentation> schedule = facade.getFullSchedule();
+        final Date dayStart = schedule.get(0).getFromTime();
+        final Date dayEnd = new Date(dayStart.getTime() + 1000L * 60 * 60 * 24);
+
+        // load the shared data once before measuring
+        createSession(facade, schedule, 0, dayStart, dayEnd);
+
+        final long before = getUsedHeap();
+        final List<DevoxxEventProvider> sessions = new ArrayList<DevoxxEventProvider>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions.add(createSession(facade, schedule, i, dayStart, dayEnd));
+        }
+        final long used = getUsedHeap() - before;
+
+        System.out.println(sessions.size() + " sessions of " + schedule.size() + " presentations: " + used / 1024
+                + " KB, " + used / SESSIONS + " bytes per session");
+    }
+
+    private static DevoxxEventProvider createSession(final RestApiFacade facade,
+            final List<DevoxxPresentation> schedule, final int session, final Date dayStart, final Date dayEnd) {
+        final DevoxxEventProvider provider = new DevoxxEventProvider(facade);
+        provider.getEvents(dayStart, dayEnd);
+
+        final MyScheduleUser user = new MyScheduleUser("user" + session + "@example.com", "code");
+        for (int i = 0; i < 10; i++) {
+            user.addFavourite(schedule.get((session + i * 17) % schedule.size()));
+        }
+        provider.refreshAttendingStyles(user);
+        provider.setSelectedPresentation(schedule.get(session % schedule.size()));
+        return provider;
+    }
+
+    private static long getUsedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,64 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.vaadin.devoxx2k10.util.DateUtil;
+
+/**
+ * Compares parsing the presentation timestamps and formatting the time label
+ * of the details panel with new SimpleDateFormats against DateUtil.
+ */
+public class DateParsingBenchmark {
+
+    /** Slot boundaries of a typical conference day */
+    private static final String[] TIMESTAMPS = { "2010-11-17 09:30:00.0", "2010-11-17 10:40:00.0",
+            "2010-11-17 11:00:00.0", "2010-11-17 12:00:00.0", "2010-11-17 13:00:00.0", "2010-11-17 14:00:00.0",
+            "2010-11-17 15:00:00.0", "2010-11-17 16:10:00.0", "2010-11-17 16:30:00.0", "2010-11-17 17:30:00.0",
+            "2010-11-17 17:50:00.0", "2010-11-17 18:50:00.0" };
+
+    public static void main(final String[] args) throws Exception {
+        new Benchmark("new SimpleDateFormat per presentation") {
+            @Override
+            protected Object run() throws Exception {
+                Date last = null;
+                for (int i = 0; i < TIMESTAMPS.length; i += 2) {
+                    final SimpleDateFormat df = new SimpleDateFormat(DateUtil.DEVOXX_JSON_DATE_PATTERN);
+                    df.parse(TIMESTAMPS[i]);
+                    last = df.parse(TIMESTAMPS[i + 1]);
+                }
+                return last;
+            }
+        }.execute(5000, 20000);
+
+        new Benchmark("DateUtil.parseJsonDate") {
+            @Override
+            protected Object run() throws Exception {
+                Date last = null;
+                for (int i = 0; i < TIMESTAMPS.length; i += 2) {
+                    DateUtil.parseJsonDate(TIMESTAMPS[i]);
+                    last = DateUtil.parseJsonDate(TIMESTAMPS[i + 1]);
+                }
+                return last;
+            }
+        }.execute(5000, 20000);
+
+        final Date from = DateUtil.parseJsonDate(TIMESTAMPS[0]);
+        final Date to = DateUtil.parseJsonDate(TIMESTAMPS[1]);
+
+        new Benchmark("time label with new SimpleDateFormats") {
+            @Override
+            protected Object run() throws Exception {
+                return new SimpleDateFormat("EEEEE, HH:mm").format(from) + " - "
+                        + new SimpleDateFormat("HH:mm").format(to);
+            }
+        }.execute(5000, 20000);
+
+        new Benchmark("time label with DateUtil") {
+            @Override
+            protected Object run() throws Exception {
+                return DateUtil.formatDayAndTime(from) + " - " + DateUtil.formatTime(to);
+            }
+        }.execute(5000, 20000);
+    }
+}
@@ -0,0 +1,106 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.vaadin.devoxx2k10.data.FullTextIndex;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationImpl;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxSpeakerImpl;
+
+/**
+ * Measures building the full-text index and the query latency over a
+ * synthetic schedule of 5000 talks.
+ */
+public class FullTextSearchBenchmark {
+
+    private static final int TALKS = 5000;
+
+    private static final String[] WORDS = { "java", "javascript", "scala", "kotlin", "groovy", "spring", "hibernate",
+            "cloud", "microservices", "performance", "garbage", "collection", "concurrency", "lambdas", "streams",
+            "android", "mobile", "web", "html5", "css", "testing", "agile", "devops", "security", "architecture",
+            "patterns", "reactive", "functional", "database", "nosql", "mongodb", "cassandra", "hadoop", "big",
+            "data", "machine", "learning", "vaadin", "gwt", "jvm", "bytecode", "compiler", "tuning", "modules",
+            "future", "enterprise", "batch", "messaging", "rest", "api", "design", "the", "and", "with", "for" };
+
+    private static final String[] NAMES = { "Alice", "Bob", "Charlie", "Dana", "Eve", "Frank", "Grace", "Heidi",
+            "Ivan", "Judy", "Mallory", "Niaj", "Olivia", "Peggy", "Rupert", "Sybil", "Trent", "Victor", "Walter" };
+
+    private static final String[] QUERIES = { "java", "j", "spring cloud", "garbage coll", "reactive streams kotlin",
+            "alice", "nosuchword" };
+
+    public static void main(final String[] args) throws Exception {
+        final List<DevoxxPresentation> schedule = createSchedule(new Random(42));
+
+        new Benchmark("build " + TALKS + " talks") {
+            @Override
+            protected Object run() {
+                return FullTextIndex.build(schedule, null);
+            }
+        }.execute(5, 20);
+
+        final FullTextIndex index = FullTextIndex.build(schedule, null);
+        new Benchmark("rebuild " + TALKS + " unchanged talks") {
+            @Override
+            protected Object run() {
+                return FullTextIndex.build(schedule, index);
+            }
+        }.execute(5, 20);
+
+        System.out.println(index.getTermCount() + " terms");
+        for (final String query : QUERIES) {
+            System.out.println("'" + query + "': " + index.search(query).size() + " matches");
+            new Benchmark("search '" + query + "'") {
+                @Override
+                protected Object run() {
+                    return index.search(query, 20);
+                }
+            }.execute(2000, 5000);
+        }
+    }
+
+    private static List<DevoxxPresentation> createSchedule(final Random random) {
+        final List<DevoxxPresentation> schedule = new ArrayList<DevoxxPresentation>(TALKS);
+        for (int id = 1; id <= TALKS; id++) {
+            final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
+            for (int i = random.nextInt(3); i >= 0; i--) {
+                speakers.add(new DevoxxSpeakerImpl(random.nextInt(1000), NAMES[random.nextInt(NAMES.length)] + " "
+                        + NAMES[random.nextInt(NAMES.length)] + "son", null));
+            }
+
+            final DevoxxPresentationImpl presentation = new DevoxxPresentationImpl(id, new Date(), new Date(), "",
+                    "", DevoxxPresentationKind.TALK, words(random, 5), speakers, "Room " + (id % 10), false, null);
+            presentation.setSummary(words(random, 80));
+            presentation.setTrack(words(random, 2));
+
+            final Set<String> tags = new HashSet<String>();
+            for (int i = 0; i < 3; i++) {
+                tags.add(WORDS[random.nextInt(WORDS.length)]);
+            }
+            presentation.setTags(tags);
+            schedule.add(presentation);
+        }
+        return schedule;
+    }
+
+    private static String words(final Random random, final int count) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+            // some unique words to make the vocabulary realistic
+            if (random.nextInt(10) == 0) {
+                result.append(random.nextInt(5000));
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationComparator;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+
+/**
+ * Parses the schedule both with the streaming parser of the facade and by
+ * first building a JSONArray of the whole data and then converting each
+ * JSONObject, for checking and benchmarking the streaming parser against the
+ * original one.
+ */
+public class JsonTreeScheduleParser extends RestApiFacadeImpl {
+
+    public JsonTreeScheduleParser(final HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    public List<DevoxxPresentation> parseStreaming(final String json) {
+        return getScheduleData(new StringReader(json));
+    }
+
+    public List<DevoxxPresentation> parseTree(final String json) {
+        final List<DevoxxPresentation> result = new ArrayList<DevoxxPresentation>();
+        final Map<Integer, DevoxxSpeaker> speakers = new HashMap<Integer, DevoxxSpeaker>();
+        try {
+            if (json != null && json.length() > 0) {
+                final JSONArray jsonArray = new JSONArray(json);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    result.add(parsePresentation((JSONObject) jsonArray.get(i), speakers));
+                }
+            }
+        } catch (final JSONException e) {
+            throw new RuntimeException(e);
+        }
+
+        Collections.sort(result, new DevoxxPresentationComparator());
+        return result;
+    }
+
+    private DevoxxPresentation parsePresentation(final JSONObject json,
+            final Map<Integer, DevoxxSpeaker> speakerRegistry) throws JSONException {
+        final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
+        if (json.has("speakers")) {
+            final JSONArray speakersJson = json.getJSONArray("speakers");
+            for (int i = 0; i < speakersJson.length(); i++) {
+                final JSONObject speakerJson = (JSONObject) speakersJson.get(i);
+                speakers.add(getSpeaker(speakerJson.getString("speakerUri"), speakerJson.getString("speaker"),
+                        speakerRegistry));
+            }
+        }
+
+        return createPresentation(json.getString("kind"), json.getString("fromTime"), json.getString("toTime"),
+                json.getString("room"), json.getBoolean("partnerSlot"), json.getString("code"), json.getString("type"),
+                json.has("presentationUri") ? json.getString("presentationUri") : null,
+                json.has("title") ? json.getString("title") : null, speakers);
+    }
+}
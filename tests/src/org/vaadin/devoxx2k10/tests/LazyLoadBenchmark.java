@@ -0,0 +1,80 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.LazyLoadProvider;
+import org.vaadin.devoxx2k10.data.LazyLoadable;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationComparator;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationImpl;
+
+/**
+ * Measures the overhead of calling the getters of a lazy loading presentation
+ * compared to calling them on the plain implementation.
+ */
+public class LazyLoadBenchmark {
+
+    private static final int CALLS = 1000;
+
+    public static void main(final String[] args) throws Exception {
+        Configuration.loadConfigurationFile("/test.properties");
+        final DevoxxPresentationImpl plain = createPresentation();
+        plain.setTags(new HashSet<String>());
+        final DevoxxPresentationImpl lazy = createPresentation();
+        lazy.setLazyLoadProvider(new LazyLoadProvider() {
+            @Override
+            public void lazyLoadFields(final LazyLoadable lazyLoadable) {
+                ((DevoxxPresentationImpl) lazyLoadable).setTags(new HashSet<String>());
+            }
+        });
+
+        run("plain", plain);
+        run("lazy loading", lazy);
+    }
+
+    private static DevoxxPresentationImpl createPresentation() {
+        return new DevoxxPresentationImpl(1, new Date(), new Date(), "code", "type", DevoxxPresentationKind.TALK,
+                "title", Collections.<DevoxxSpeaker> emptyList(), "Room 8", false, "uri");
+    }
+
+    private static void run(final String name, final DevoxxPresentation presentation) throws Exception {
+        new Benchmark(name + ": " + CALLS + " x getId/getFromTime") {
+            @Override
+            protected Object run() {
+                long sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += presentation.getId() + presentation.getFromTime().getTime();
+                }
+                return sum;
+            }
+        }.execute(2000, 5000);
+
+        new Benchmark(name + ": " + CALLS + " x getTags (loaded)") {
+            @Override
+            protected Object run() {
+                int sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += presentation.getTags().size();
+                }
+                return sum;
+            }
+        }.execute(2000, 5000);
+
+        final List<DevoxxPresentation> list = Collections.nCopies(200, presentation);
+        new Benchmark(name + ": sort 200") {
+            @Override
+            protected Object run() {
+                final List<DevoxxPresentation> copy = new ArrayList<DevoxxPresentation>(list);
+                Collections.sort(copy, new DevoxxPresentationComparator());
+                return copy;
+            }
+        }.execute(200, 1000);
+    }
+}
@@ -0,0 +1,61 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotArchive;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+
+/**
+ * Compares serving the offline snapshot from one file per URL against serving
+ * it from the memory-mapped snapshot archive: the time to open the archive
+ * and to get every response of the snapshot once.
+ */
+public class OfflineSnapshotBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        Configuration.loadConfigurationFile("/test.properties");
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        final long start = System.nanoTime();
+        final SnapshotArchive archive = SnapshotArchive.forPrefix("20101112110640");
+        System.out.println(String.format("%-45s %12.2f us", "opening the archive", (System.nanoTime() - start) / 1000.0));
+
+        final List<String> urls = new ArrayList<String>();
+        for (final String path : archive.getPaths()) {
+            urls.add(RestApiFacadeImpl.REST_API_BASE_URL + path);
+        }
+        System.out.println(urls.size() + " responses");
+
+        final HttpClient mock = new OfflineHttpClientMock("20101112110640");
+        final HttpClient snapshot = new SnapshotHttpClient(archive);
+
+        new Benchmark("all responses, files") {
+            @Override
+            protected Object run() throws Exception {
+                int length = 0;
+                for (final String url : urls) {
+                    length += mock.get(url).getResponse().length();
+                }
+                return length;
+            }
+        }.execute(50, 200);
+
+        new Benchmark("all responses, archive") {
+            @Override
+            protected Object run() throws Exception {
+                int length = 0;
+                for (final String url : urls) {
+                    length += snapshot.get(url).getResponse().length();
+                }
+                return length;
+            }
+        }.execute(50, 200);
+    }
+}
@@ -0,0 +1,69 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+
+/**
+ * Compares the streaming schedule parser against building the org.json tree
+ * first, using the bundled offline schedule data.
+ */
+public class ScheduleParserBenchmark {
+
+    private static final String[] SCHEDULES = { "/offline-schedule.json",
+            "/offline-json-snapshots/20101112110640/events/1/schedule" };
+
+    public static void main(final String[] args) throws Exception {
+        Configuration.loadConfigurationFile("/test.properties");
+        final JsonTreeScheduleParser parser = new JsonTreeScheduleParser(new OfflineHttpClientMock("20101112110640"));
+
+        for (final String schedule : SCHEDULES) {
+            final String json = readResource(schedule);
+            System.out.println(schedule + " (" + json.length() + " chars)");
+
+            new Benchmark("org.json tree") {
+                @Override
+                protected Object run() {
+                    return parser.parseTree(json);
+                }
+            }.execute(200, 500);
+
+            new Benchmark("streaming") {
+                @Override
+                protected Object run() {
+                    return parser.parseStreaming(json);
+                }
+            }.execute(200, 500);
+
+            final List<DevoxxPresentation> streamed = parser.parseStreaming(json);
+            if (!streamed.equals(parser.parseTree(json))) {
+                throw new IllegalStateException("Parsers returned different schedules for " + schedule);
+            }
+        }
+    }
+
+    private static String readResource(final String name) throws IOException {
+        final InputStream in = ScheduleParserBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Resource not found: " + name);
+        }
+        final Reader reader = new InputStreamReader(in, "utf-8");
+        try {
+            final StringBuilder result = new StringBuilder();
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                result.append(buffer, 0, read);
+            }
+            return result.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationComparator;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+
+/**
+ * Compares sorting the schedule by the precomputed sort keys against looking
+ * up the room order on every comparison, and measures the check that lets an
+ * already sorted schedule skip sorting.
+ */
+public class ScheduleSortBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        Configuration.loadConfigurationFile("/test.properties");
+        Logger.getRootLogger().setLevel(Level.WARN);
+        final List<DevoxxPresentation> sorted = new RestApiFacadeImpl(new OfflineHttpClientMock("20101112110640"))
+                .getFullSchedule();
+        final List<DevoxxPresentation> shuffled = new ArrayList<DevoxxPresentation>(sorted);
+        Collections.shuffle(shuffled, new Random(42));
+        System.out.println(sorted.size() + " presentations");
+
+        final Comparator<DevoxxPresentation> roomListComparator = new RoomListComparator();
+        new Benchmark("shuffled, room list lookups") {
+            @Override
+            protected Object run() {
+                final List<DevoxxPresentation> list = new ArrayList<DevoxxPresentation>(shuffled);
+                Collections.sort(list, roomListComparator);
+                return list;
+            }
+        }.execute(20000, 20000);
+
+        final Comparator<DevoxxPresentation> comparator = new DevoxxPresentationComparator();
+        new Benchmark("shuffled, sort keys") {
+            @Override
+            protected Object run() {
+                final List<DevoxxPresentation> list = new ArrayList<DevoxxPresentation>(shuffled);
+                Collections.sort(list, comparator);
+                return list;
+            }
+        }.execute(20000, 20000);
+
+        new Benchmark("sorted, room list lookups") {
+            @Override
+            protected Object run() {
+                final List<DevoxxPresentation> list = new ArrayList<DevoxxPresentation>(sorted);
+                Collections.sort(list, roomListComparator);
+                return list;
+            }
+        }.execute(20000, 20000);
+
+        new Benchmark("sorted, checked and skipped") {
+            @Override
+            protected Object run() {
+                final List<DevoxxPresentation> list = new ArrayList<DevoxxPresentation>(sorted);
+                if (!DevoxxPresentationComparator.isSorted(list)) {
+                    Collections.sort(list, comparator);
+                }
+                return list;
+            }
+        }.execute(20000, 20000);
+    }
+
+    /**
+     * The comparison as it was before the sort keys, kept for comparison.
+     */
+    private static class RoomListComparator implements Comparator<DevoxxPresentation> {
+
+        private final List<String> conferenceRoomOrder = Arrays.asList(Configuration
+                .getArrayProperty("conference.room.ordering"));
+
+        @Override
+        public int compare(final DevoxxPresentation o1, final DevoxxPresentation o2) {
+            final int dateCompare = o1.getFromTime().compareTo(o2.getFromTime());
+            if (dateCompare == 0) {
+                return conferenceRoomOrder.indexOf(o2.getRoom()) - conferenceRoomOrder.indexOf(o1.getRoom());
+            }
+            return dateCompare;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.CachingRestApiFacade;
+import org.vaadin.devoxx2k10.data.LazyLoadable;
+import org.vaadin.devoxx2k10.data.RestApiException;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+import org.vaadin.devoxx2k10.util.IntSet;
+
+public class TestCachingRestApiFacade {
+
+    private static final int THREADS = 20;
+
+    private CountingHttpClient httpClient;
+    private ExecutorService executor;
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Before
+    public void setup() {
+        CachingRestApiFacade.clearCache();
+        httpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"), 100);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        CachingRestApiFacade.shutdown();
+        CachingRestApiFacade.clearCache();
+    }
+
+    @Test
+    public void testConcurrentFullScheduleLoadedOnce() throws Exception {
+        final List<List<DevoxxPresentation>> results = runConcurrently(new Callable<List<DevoxxPresentation>>() {
+            @Override
+            public List<DevoxxPresentation> call() {
+                return new CachingRestApiFacade(httpClient).getFullSchedule();
+            }
+        });
+
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+        for (final List<DevoxxPresentation> result : results) {
+            Assert.assertSame(results.get(0), result);
+        }
+    }
+
+    @Test
+    public void testConcurrentSearchLoadedOnce() throws Exception {
+        final List<List<DevoxxPresentation>> results = runConcurrently(new Callable<List<DevoxxPresentation>>() {
+            @Override
+            public List<DevoxxPresentation> call() {
+                return new CachingRestApiFacade(httpClient).search("java");
+            }
+        });
+
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL + "?tags=java"));
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+        for (final List<DevoxxPresentation> result : results) {
+            Assert.assertSame(results.get(0), result);
+        }
+    }
+
+    @Test
+    public void testRefreshSwapsInChangedSchedule() {
+        final CachingRestApiFacade facade = new CachingRestApiFacade(httpClient);
+        final List<DevoxxPresentation> original = facade.getFullSchedule();
+
+        httpClient.setChanged(true);
+        CachingRestApiFacade.refresh();
+
+        final List<DevoxxPresentation> refreshed = facade.getFullSchedule();
+        Assert.assertNotSame(original, refreshed);
+        Assert.assertEquals(original.size(), refreshed.size());
+        Assert.assertEquals(2, httpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+    }
+
+    @Test
+    public void testRefreshKeepsUnchangedSchedule() {
+        final CountingHttpClient fastHttpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"),
+                0);
+        final CachingRestApiFacade facade = new CachingRestApiFacade(fastHttpClient);
+        final List<DevoxxPresentation> original = facade.getFullSchedule();
+
+        CachingRestApiFacade.refresh();
+
+        Assert.assertSame(original, facade.getFullSchedule());
+        Assert.assertEquals(2, fastHttpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+    }
+
+    @Test
+    public void testRefreshKeepsStaleDataOnFailure() {
+        final CachingRestApiFacade facade = new CachingRestApiFacade(httpClient);
+        final List<DevoxxPresentation> original = facade.getFullSchedule();
+
+        httpClient.setFailing(true);
+        CachingRestApiFacade.refresh();
+
+        Assert.assertSame(original, facade.getFullSchedule());
+        Assert.assertEquals(2, httpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+    }
+
+    @Test
+    public void testSessionFacadeNotRetainedByCache() throws InterruptedException {
+        CachingRestApiFacade facade = new CachingRestApiFacade(httpClient);
+        final List<DevoxxPresentation> schedule = facade.getFullSchedule();
+        final WeakReference<CachingRestApiFacade> reference = new WeakReference<CachingRestApiFacade>(facade);
+        facade = null;
+
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(reference.get());
+
+        // still refreshed and served through the shared loader
+        CachingRestApiFacade.refresh();
+        Assert.assertSame(schedule, new CachingRestApiFacade(httpClient).getFullSchedule());
+        Assert.assertEquals(2, httpClient.getRequestCount(RestApiFacadeImpl.SCHEDULE_URL));
+    }
+
+    @Test
+    public void testSearchFromTagIndex() throws InterruptedException {
+        final CountingHttpClient fastHttpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"),
+                0);
+        // parse new presentations instead of reusing ones loading lazily
+        // through the slow client of the other tests
+        fastHttpClient.setChanged(true);
+        final CachingRestApiFacade facade = new CachingRestApiFacade(fastHttpClient);
+        final DevoxxPresentation tagged = facade.getFullSchedule().get(2);
+
+        // wait for the index to be built in the background
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (CachingRestApiFacade.getTagIndex() == null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(CachingRestApiFacade.getTagIndex());
+
+        final List<DevoxxPresentation> result = facade.search("xml");
+        Assert.assertTrue(result.contains(tagged));
+        for (final DevoxxPresentation presentation : result) {
+            Assert.assertTrue(presentation.getTags().contains("XML"));
+        }
+        Assert.assertEquals(0, fastHttpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL + "?tags=xml"));
+    }
+
+    @Test
+    public void testSearchCacheDroppedWithTagIndex() throws InterruptedException {
+        final CachingRestApiFacade facade = new CachingRestApiFacade(httpClient);
+        facade.getFullSchedule();
+
+        // the details load slowly, so the index isn't ready yet
+        facade.search("java");
+        Assert.assertNull(CachingRestApiFacade.getTagIndex());
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL + "?tags=java"));
+
+        final long timeout = System.currentTimeMillis() + 20000;
+        while (CachingRestApiFacade.getTagIndex() == null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(CachingRestApiFacade.getTagIndex());
+
+        // the cached search results are no longer refreshed
+        CachingRestApiFacade.refresh();
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL + "?tags=java"));
+    }
+
+    @Test
+    public void testSearchTextFromFullTextIndex() throws InterruptedException {
+        final CountingHttpClient fastHttpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"),
+                0);
+        fastHttpClient.setChanged(true);
+        final CachingRestApiFacade facade = new CachingRestApiFacade(fastHttpClient);
+        final DevoxxPresentation tagged = facade.getFullSchedule().get(2);
+
+        // built in the background after the tag index
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (CachingRestApiFacade.getFullTextIndex() == null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(CachingRestApiFacade.getTagIndex());
+        Assert.assertNotNull(CachingRestApiFacade.getFullTextIndex());
+
+        Assert.assertTrue(facade.searchText("conference guide").contains(tagged));
+        Assert.assertEquals(0, fastHttpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL
+                + "?tags=conference+guide"));
+    }
+
+    @Test
+    public void testSearchTextBeforeIndexReady() {
+        // details are loaded slowly, so the index isn't ready for a while
+        final CachingRestApiFacade facade = new CachingRestApiFacade(httpClient);
+        facade.getFullSchedule();
+
+        final List<DevoxxPresentation> result = facade.searchText("java");
+        Assert.assertEquals(facade.search("java"), result);
+        Assert.assertEquals(1, httpClient.getRequestCount(RestApiFacadeImpl.SEARCH_URL + "?tags=java"));
+    }
+
+    @Test
+    public void testDetailsSurviveScheduleRefresh() {
+        final CountingHttpClient fastHttpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"),
+                0);
+        fastHttpClient.setChanged(true);
+        final CachingRestApiFacade facade = new CachingRestApiFacade(fastHttpClient);
+        final DevoxxPresentation original = facade.getFullSchedule().get(2);
+        final String summary = original.getSummary();
+        Assert.assertNotNull(summary);
+
+        CachingRestApiFacade.refresh();
+        final DevoxxPresentation refreshed = facade.getFullSchedule().get(2);
+        Assert.assertNotSame(original, refreshed);
+        Assert.assertEquals(summary, refreshed.getSummary());
+        Assert.assertEquals(1, fastHttpClient.getRequestCount(((LazyLoadable) refreshed).getLazyLoadingUri()));
+    }
+
+    @Test
+    public void testSignInFromCache() throws RestApiException {
+        final CountingHttpClient fastHttpClient = new CountingHttpClient(new SnapshotHttpClient("20101112110640"),
+                0);
+        final CachingRestApiFacade facade = new CachingRestApiFacade(fastHttpClient);
+        final String userScheduleUrl = RestApiFacadeImpl.SCHEDULE_URL + "/test@example.com";
+
+        final MyScheduleUser user = new MyScheduleUser("test@example.com", "code");
+        Assert.assertTrue(facade.signIn(user));
+        Assert.assertEquals(1, fastHttpClient.getRequestCount(RestApiFacadeImpl.MY_SCHEDULE_VALIDATION_URL));
+        Assert.assertEquals(1, fastHttpClient.getRequestCount(userScheduleUrl));
+
+        final IntSet saved = new IntSet(user.getFavourites());
+        user.addFavourite(facade.getFullSchedule().get(0));
+
+        // favourites that couldn't be saved aren't remembered
+        fastHttpClient.setFailing(true);
+        try {
+            facade.saveMySchedule(user);
+            Assert.fail("Saving should fail");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+        fastHttpClient.setFailing(false);
+        final MyScheduleUser afterFailure = new MyScheduleUser("test@example.com", "code");
+        Assert.assertTrue(facade.signIn(afterFailure));
+        Assert.assertEquals(saved, afterFailure.getFavourites());
+
+        facade.saveMySchedule(user);
+        // the saves are posted to the same URL
+        final int userScheduleRequests = fastHttpClient.getRequestCount(userScheduleUrl);
+
+        // signing in again, for example after a page reload
+        final MyScheduleUser again = new MyScheduleUser("test@example.com", "code");
+        Assert.assertTrue(facade.signIn(again));
+        Assert.assertEquals(1, fastHttpClient.getRequestCount(RestApiFacadeImpl.MY_SCHEDULE_VALIDATION_URL));
+        Assert.assertEquals(userScheduleRequests, fastHttpClient.getRequestCount(userScheduleUrl));
+        Assert.assertEquals(user.getFavourites(), again.getFavourites());
+
+        // another activation code is validated
+        Assert.assertTrue(facade.signIn(new MyScheduleUser("test@example.com", "other")));
+        Assert.assertEquals(2, fastHttpClient.getRequestCount(RestApiFacadeImpl.MY_SCHEDULE_VALIDATION_URL));
+    }
+
+    private List<List<DevoxxPresentation>> runConcurrently(final Callable<List<DevoxxPresentation>> task)
+            throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<List<DevoxxPresentation>>> futures = new ArrayList<Future<List<DevoxxPresentation>>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<List<DevoxxPresentation>>() {
+                @Override
+                public List<DevoxxPresentation> call() throws Exception {
+                    start.await();
+                    return task.call();
+                }
+            }));
+        }
+        start.countDown();
+
+        final List<List<DevoxxPresentation>> results = new ArrayList<List<DevoxxPresentation>>();
+        for (final Future<List<DevoxxPresentation>> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Counts the requests per URL and delays each of them a bit so that the
+     * concurrent callers really overlap. Can also simulate the REST API being
+     * down or the schedule having changed.
+     */
+    private static class CountingHttpClient implements HttpClient {
+
+        private final HttpClient delegate;
+        private final long requestDelayInMs;
+        private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        private volatile boolean failing;
+        private volatile boolean changed;
+
+        public CountingHttpClient(final HttpClient delegate, final long requestDelayInMs) {
+            this.delegate = delegate;
+            this.requestDelayInMs = requestDelayInMs;
+        }
+
+        public int getRequestCount(final String urlString) {
+            final AtomicInteger count = requestCounts.get(urlString);
+            return count != null ? count.get() : 0;
+        }
+
+        public void setFailing(final boolean failing) {
+            this.failing = failing;
+        }
+
+        public void setChanged(final boolean changed) {
+            this.changed = changed;
+        }
+
+        private void countRequest(final String urlString) throws IOException {
+            AtomicInteger count = requestCounts.get(urlString);
+            if (count == null) {
+                requestCounts.putIfAbsent(urlString, new AtomicInteger());
+                count = requestCounts.get(urlString);
+            }
+            count.incrementAndGet();
+
+            if (requestDelayInMs > 0) {
+                try {
+                    Thread.sleep(requestDelayInMs);
+                } catch (final InterruptedException e) {
+                    // stop the background threads of a finished test
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(urlString);
+                }
+            }
+
+            if (failing) {
+                throw new IOException("Simulated failure: " + urlString);
+            }
+        }
+
+        @Override
+        public HttpResponse get(final String urlString) throws IOException {
+            countRequest(urlString);
+            return delegate.get(urlString);
+        }
+
+        @Override
+        public HttpResponse get(final String urlString, final HttpResponse previousResponse) throws IOException {
+            countRequest(urlString);
+            return delegate.get(urlString, previousResponse);
+        }
+
+        @Override
+        public HttpResponse openStream(final String urlString, final HttpResponse previousResponse)
+                throws IOException {
+            countRequest(urlString);
+            if (changed) {
+                // same data with a different ETag
+                final String json = delegate.get(urlString).getResponse();
+                return new HttpResponse(HttpURLConnection.HTTP_OK, json + " ", "\"changed\"", null);
+            }
+            return delegate.openStream(urlString, previousResponse);
+        }
+
+        @Override
+        public int post(final String urlString, final String postData) throws IOException {
+            countRequest(urlString);
+            return delegate.post(urlString, postData);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.ui.calendar.CalendarEventIndex;
+
+import com.vaadin.addon.calendar.event.BasicEvent;
+import com.vaadin.addon.calendar.event.BasicEventProvider;
+
+public class TestCalendarEventIndex {
+
+    private static final long HOUR = 1000L * 60 * 60;
+    private static final long START = 1290000000000L;
+
+    private BasicEventProvider provider;
+    private CalendarEventIndex index;
+
+    @Before
+    public void setup() {
+        final Random random = new Random(42);
+        provider = new BasicEventProvider();
+        for (int i = 0; i < 500; i++) {
+            final long start = START + (random.nextInt(24 * 10) - 24) * HOUR;
+            // mostly short events, some spanning several days
+            final long length = random.nextInt(10) == 0 ? random.nextInt(24 * 4) * HOUR : random.nextInt(3) * HOUR;
+            provider.addEvent(createEvent(start, start + length));
+        }
+        index = CalendarEventIndex.build(provider.getEvents(new Date(Long.MIN_VALUE), new Date(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSameEventsAsBasicEventProvider() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            final long from = START + (random.nextInt(24 * 12) - 48) * HOUR;
+            final long to = from + random.nextInt(24 * 3) * HOUR;
+            Assert.assertEquals(provider.getEvents(new Date(from), new Date(to)),
+                    index.getEvents(new Date(from), new Date(to)));
+        }
+    }
+
+    @Test
+    public void testRangeEndpointsIncluded() {
+        final BasicEventProvider single = new BasicEventProvider();
+        single.addEvent(createEvent(START, START + HOUR));
+        final CalendarEventIndex singleIndex = CalendarEventIndex.build(single.getEvents(new Date(0), new Date(
+                Long.MAX_VALUE)));
+
+        Assert.assertEquals(1, singleIndex.getEvents(new Date(START + HOUR), new Date(START + 2 * HOUR)).size());
+        Assert.assertEquals(1, singleIndex.getEvents(new Date(START - HOUR), new Date(START)).size());
+        Assert.assertEquals(0, singleIndex.getEvents(new Date(START + HOUR + 1), new Date(START + 2 * HOUR)).size());
+    }
+
+    private static BasicEvent createEvent(final long start, final long end) {
+        final BasicEvent event = new BasicEvent();
+        event.setStart(new Date(start));
+        event.setEnd(new Date(end));
+        return event;
+    }
+}
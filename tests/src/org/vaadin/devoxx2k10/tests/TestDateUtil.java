@@ -0,0 +1,92 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.util.DateUtil;
+import org.vaadin.devoxx2k10.util.TimestampFormat;
+
+public class TestDateUtil {
+
+    @Test
+    public void testParseJsonDate() throws ParseException {
+        final String timestamp = "2010-11-17 09:30:00.0";
+        final Date expected = new SimpleDateFormat(DateUtil.DEVOXX_JSON_DATE_PATTERN).parse(timestamp);
+
+        Assert.assertEquals(expected, DateUtil.parseJsonDate(timestamp));
+    }
+
+    @Test
+    public void testParsedDatesCanonical() throws ParseException {
+        final Date first = DateUtil.parseJsonDate(new String("2010-11-17 10:40:00.0"));
+        final Date second = DateUtil.parseJsonDate(new String("2010-11-17 10:40:00.0"));
+        Assert.assertSame(first, second);
+        Assert.assertSame(first, DateUtil.getDate(first.getTime()));
+
+        try {
+            second.setTime(0);
+            Assert.fail("Parsed dates must not be modifiable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        final Date copy = (Date) first.clone();
+        copy.setTime(0);
+        Assert.assertEquals(0, copy.getTime());
+        Assert.assertFalse(first.getTime() == 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testParseInvalidJsonDate() throws ParseException {
+        DateUtil.parseJsonDate("17.11.2010 09:30");
+    }
+
+    @Test
+    public void testFormat() throws ParseException {
+        final Date date = DateUtil.parseJsonDate("2010-11-17 09:05:00.0");
+
+        Assert.assertEquals("09:05", DateUtil.formatTime(date));
+        Assert.assertEquals(new SimpleDateFormat("EEEEE, HH:mm").format(date), DateUtil.formatDayAndTime(date));
+    }
+
+    @Test
+    public void testTimestampFormatAcrossDaylightSaving() throws ParseException {
+        final TimeZone brussels = TimeZone.getTimeZone("Europe/Brussels");
+        final TimestampFormat format = new TimestampFormat(brussels, Locale.ENGLISH);
+        final SimpleDateFormat parser = new SimpleDateFormat(DateUtil.DEVOXX_JSON_DATE_PATTERN);
+        parser.setTimeZone(brussels);
+        final SimpleDateFormat dayAndTime = new SimpleDateFormat("EEEE, HH:mm", Locale.ENGLISH);
+        dayAndTime.setTimeZone(brussels);
+
+        // summer time ends on 31.10.2010 at 03:00, repeating 02:00 - 03:00
+        final String[] timestamps = { "2010-10-30 23:59:59.999", "2010-10-31 01:30:00.0", "2010-10-31 02:30:00.0",
+                "2010-10-31 04:00:00.5", "2010-11-17 00:00:00.0", "2011-02-28 18:50:00.0", "2012-02-29 09:30:00.25",
+                "1969-12-31 23:00:00.0" };
+        for (final String timestamp : timestamps) {
+            final long time = format.parse(timestamp);
+            Assert.assertEquals(timestamp, parser.parse(timestamp).getTime(), time);
+            Assert.assertEquals(timestamp, dayAndTime.format(new Date(time)), format.formatDayAndTime(time));
+            Assert.assertEquals(timestamp, timestamp.substring(11, 16), format.formatTime(time));
+        }
+    }
+
+    @Test
+    public void testTimestampFormatRejectsInvalid() {
+        final TimestampFormat format = new TimestampFormat(TimeZone.getTimeZone("UTC"), Locale.ENGLISH);
+        final String[] invalid = { "", "2010-11-17", "2010-11-17 09:30:00", "2010-11-17 09:30:00.",
+                "2010-13-17 09:30:00.0", "2010-11-17 24:30:00.0", "2010/11/17 09:30:00.0", "2010-11-17 09:3x:00.0", "2010-11-17 09:30:00.12345" };
+        for (final String timestamp : invalid) {
+            try {
+                format.parse(timestamp);
+                Assert.fail("Parsed " + timestamp);
+            } catch (final ParseException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.DetailPrefetcher;
+import org.vaadin.devoxx2k10.data.LazyLoadable;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+
+public class TestDetailPrefetcher {
+
+    private DetailPrefetcher prefetcher;
+    private List<DevoxxPresentation> schedule;
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Before
+    public void setup() throws IOException {
+        // parse a schedule of its own so that no other test has loaded the
+        // details already
+        final HttpClient httpClient = new SnapshotHttpClient("20101112110640");
+        final String json = httpClient.get(RestApiFacadeImpl.SCHEDULE_URL).getResponse();
+        schedule = new ParsingFacade(httpClient).parse(json);
+    }
+
+    @After
+    public void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchLoadsPresentationsAndSpeakers() throws InterruptedException {
+        final List<DevoxxPresentation> presentations = schedule.subList(0, 20);
+        Assert.assertTrue(isLoadPending(presentations.get(2)));
+
+        prefetcher = new DetailPrefetcher(4, 0);
+        prefetcher.prefetch(presentations, false);
+        waitUntilLoaded(presentations, 10000);
+
+        for (final DevoxxPresentation presentation : presentations) {
+            Assert.assertFalse(isLoadPending(presentation));
+            for (final DevoxxSpeaker speaker : presentation.getSpeakers()) {
+                Assert.assertFalse(isLoadPending(speaker));
+            }
+        }
+        Assert.assertEquals("SENIOR", presentations.get(2).getExperience());
+    }
+
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        final List<DevoxxPresentation> presentations = schedule.subList(20, 40);
+
+        final long start = System.currentTimeMillis();
+        prefetcher = new DetailPrefetcher(4, 50);
+        prefetcher.prefetch(presentations, false);
+        final int requests = prefetcher.getQueueSize();
+        waitUntilLoaded(presentations, 10000);
+
+        // the first request is made immediately
+        Assert.assertTrue(System.currentTimeMillis() - start >= (requests - 1) * 1000 / 50);
+    }
+
+    @Test
+    public void testLoadSharesRateLimit() throws InterruptedException {
+        final List<DevoxxPresentation> presentations = schedule.subList(60, 70);
+
+        final long start = System.currentTimeMillis();
+        prefetcher = new DetailPrefetcher(1, 50);
+        for (final DevoxxPresentation presentation : presentations) {
+            prefetcher.load((LazyLoadable) presentation);
+            Assert.assertFalse(isLoadPending(presentation));
+        }
+
+        // the first request is made immediately
+        Assert.assertTrue(System.currentTimeMillis() - start >= (presentations.size() - 1) * 1000 / 50);
+    }
+
+    @Test
+    public void testQueuedOnlyOnce() {
+        final List<DevoxxPresentation> presentations = schedule.subList(40, 60);
+
+        prefetcher = new DetailPrefetcher(1, 1);
+        prefetcher.prefetch(presentations, false);
+        final int queueSize = prefetcher.getQueueSize();
+        prefetcher.prefetch(presentations, true);
+        prefetcher.prefetch(presentations.subList(0, 5), true);
+        prefetcher.prefetch(presentations, false);
+
+        Assert.assertTrue(queueSize > 20);
+        Assert.assertTrue(prefetcher.getQueueSize() <= queueSize);
+    }
+
+    @Test
+    public void testQueueBounded() {
+        final List<DevoxxPresentation> presentations = schedule.subList(60, 80);
+
+        prefetcher = new DetailPrefetcher(1, 1, 5, null);
+        prefetcher.prefetch(presentations, false);
+        Assert.assertTrue(prefetcher.getQueueSize() <= 5);
+        prefetcher.prefetch(presentations, true);
+        Assert.assertTrue(prefetcher.getQueueSize() <= 5);
+    }
+
+    @Test
+    public void testCachedDetailsNotRateLimited() throws InterruptedException {
+        final List<DevoxxPresentation> presentations = schedule.subList(80, 100);
+
+        // one request per second would take over half a minute
+        prefetcher = new DetailPrefetcher(1, 1, DetailPrefetcher.DEFAULT_MAX_QUEUE_SIZE,
+                new DetailPrefetcher.DetailCache() {
+                    @Override
+                    public boolean isCached(final LazyLoadable lazy) {
+                        return true;
+                    }
+                });
+        prefetcher.prefetch(presentations, false);
+        waitUntilLoaded(presentations, 5000);
+    }
+
+    private void waitUntilLoaded(final List<DevoxxPresentation> presentations, final long timeoutInMs)
+            throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + timeoutInMs;
+        while (System.currentTimeMillis() < timeout) {
+            boolean pending = false;
+            for (final DevoxxPresentation presentation : presentations) {
+                pending |= isLoadPending(presentation);
+                for (final DevoxxSpeaker speaker : presentation.getSpeakers()) {
+                    pending |= isLoadPending(speaker);
+                }
+            }
+            if (!pending) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        Assert.fail("Details not loaded in " + timeoutInMs + " ms");
+    }
+
+    private static boolean isLoadPending(final Object object) {
+        return ((LazyLoadable) object).isLoadPending();
+    }
+
+    /**
+     * Exposes the schedule parser of the facade.
+     */
+    private static class ParsingFacade extends RestApiFacadeImpl {
+
+        public ParsingFacade(final HttpClient httpClient) {
+            super(httpClient);
+        }
+
+        public List<DevoxxPresentation> parse(final String json) {
+            return getScheduleData(new StringReader(json));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser.UserFavouritesChangedListener;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+import org.vaadin.devoxx2k10.ui.calendar.DevoxxCalendarEvent;
+import org.vaadin.devoxx2k10.ui.calendar.DevoxxEventProvider;
+import org.vaadin.devoxx2k10.util.IntSet;
+
+import com.vaadin.addon.calendar.event.CalendarEvent;
+import com.vaadin.addon.calendar.event.CalendarEventProvider.EventSetChange;
+import com.vaadin.addon.calendar.event.CalendarEventProvider.EventSetChangeListener;
+
+public class TestDevoxxEventProvider {
+
+    private DevoxxEventProvider provider;
+    private List<DevoxxPresentation> fullSchedule;
+    private List<DevoxxPresentation> schedule;
+    private MyScheduleUser user;
+    private int changeCount;
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Before
+    public void setup() {
+        final RestApiFacadeImpl facade = new RestApiFacadeImpl(new SnapshotHttpClient("20101112110640"));
+        // breaks and such have no id and can't be favourites
+        fullSchedule = facade.getFullSchedule();
+        schedule = new ArrayList<DevoxxPresentation>();
+        for (final DevoxxPresentation presentation : fullSchedule) {
+            if (presentation.getId() > 0) {
+                schedule.add(presentation);
+            }
+        }
+        provider = new DevoxxEventProvider(facade);
+        provider.getEvents(new Date(0), new Date(Long.MAX_VALUE));
+        provider.addListener(new EventSetChangeListener() {
+            private static final long serialVersionUID = 1L;
+
+            public void eventSetChange(final EventSetChange changeEvent) {
+                changeCount++;
+            }
+        });
+
+        user = new MyScheduleUser("test@example.com", "code");
+        user.addListener(new UserFavouritesChangedListener() {
+            public void favouritesChanged(final MyScheduleUser user, final IntSet addedIds,
+                    final IntSet removedIds) {
+                provider.updateAttendingStyles(addedIds, removedIds);
+            }
+        });
+    }
+
+    @Test
+    public void testAttendingStyleUpdatedOnFavouriteChange() {
+        final DevoxxPresentation presentation = schedule.get(10);
+
+        user.addFavourite(presentation);
+        Assert.assertEquals(1, changeCount);
+        Assert.assertTrue(hasStyle(presentation, "attending"));
+        Assert.assertFalse(hasStyle(schedule.get(11), "attending"));
+
+        user.removeFavourite(presentation);
+        Assert.assertEquals(2, changeCount);
+        Assert.assertFalse(hasStyle(presentation, "attending"));
+
+        // removing again changes nothing
+        user.removeFavourite(presentation);
+        Assert.assertEquals(2, changeCount);
+    }
+
+    @Test
+    public void testBatchedFavouriteChangesNotifyOnce() {
+        final List<DevoxxPresentation> favourites = Arrays.asList(schedule.get(20), schedule.get(30),
+                schedule.get(40));
+
+        user.addFavourites(favourites);
+        Assert.assertEquals(1, changeCount);
+        for (final DevoxxPresentation presentation : favourites) {
+            Assert.assertTrue(hasStyle(presentation, "attending"));
+        }
+
+        user.removeFavourites(favourites);
+        Assert.assertEquals(2, changeCount);
+        for (final DevoxxPresentation presentation : favourites) {
+            Assert.assertFalse(hasStyle(presentation, "attending"));
+        }
+    }
+
+    @Test
+    public void testSelectionKeepsAttendingStyle() {
+        final DevoxxPresentation presentation = schedule.get(50);
+        user.addFavourite(presentation);
+
+        provider.setSelectedPresentation(presentation);
+        Assert.assertTrue(hasStyle(presentation, "attending"));
+        Assert.assertTrue(hasStyle(presentation, "selected"));
+
+        provider.setSelectedPresentation(schedule.get(51));
+        Assert.assertTrue(hasStyle(presentation, "attending"));
+        Assert.assertFalse(hasStyle(presentation, "selected"));
+        Assert.assertTrue(hasStyle(schedule.get(51), "selected"));
+
+        // the selection is styled on the client-side, no repaint needed
+        Assert.assertEquals(1, changeCount);
+    }
+
+    @Test
+    public void testGetEventById() {
+        for (final DevoxxPresentation presentation : schedule) {
+            final CalendarEvent event = provider.getEvent(presentation.getId());
+            Assert.assertSame(presentation, ((DevoxxCalendarEvent) event).getDevoxxEvent());
+        }
+        Assert.assertNull(provider.getEvent(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSelectEventWithoutId() {
+        // breaks and such share the id 0, so they are found by a scan
+        final DevoxxPresentation first = findWithoutId(0);
+        final DevoxxPresentation second = findWithoutId(1);
+        Assert.assertSame(first, ((DevoxxCalendarEvent) provider.getEvent(0)).getDevoxxEvent());
+
+        provider.setSelectedPresentation(second);
+        Assert.assertTrue(hasStyle(getEvent(second), "selected"));
+        Assert.assertFalse(hasStyle(getEvent(first), "selected"));
+    }
+
+    @Test
+    public void testSelectionChangeRestylesOnlyTwoEvents() {
+        final DevoxxPresentation previous = schedule.get(10);
+        final DevoxxPresentation next = schedule.get(20);
+        provider.setSelectedPresentation(previous);
+        final List<String> styles = getStyles();
+
+        provider.setSelectedPresentation(next);
+        Assert.assertFalse(hasStyle(previous, "selected"));
+        Assert.assertTrue(hasStyle(next, "selected"));
+
+        final List<String> changedStyles = getStyles();
+        final List<CalendarEvent> events = getEvents();
+        for (int i = 0; i < events.size(); i++) {
+            final DevoxxPresentation presentation = ((DevoxxCalendarEvent) events.get(i)).getDevoxxEvent();
+            if (presentation != previous && presentation != next) {
+                Assert.assertEquals(styles.get(i), changedStyles.get(i));
+            }
+        }
+    }
+
+    private DevoxxPresentation findWithoutId(final int index) {
+        int found = 0;
+        for (final DevoxxPresentation presentation : fullSchedule) {
+            if (presentation.getId() == 0 && found++ == index) {
+                return presentation;
+            }
+        }
+        throw new IllegalStateException("Not enough presentations without an id");
+    }
+
+    private List<CalendarEvent> getEvents() {
+        return provider.getEvents(new Date(0), new Date(Long.MAX_VALUE));
+    }
+
+    private CalendarEvent getEvent(final DevoxxPresentation presentation) {
+        for (final CalendarEvent event : getEvents()) {
+            if (((DevoxxCalendarEvent) event).getDevoxxEvent() == presentation) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private List<String> getStyles() {
+        final List<String> styles = new ArrayList<String>();
+        for (final CalendarEvent event : getEvents()) {
+            styles.add(event.getStyleName());
+        }
+        return styles;
+    }
+
+    private static boolean hasStyle(final CalendarEvent event, final String style) {
+        return Arrays.asList(event.getStyleName().split(" ")).contains(style);
+    }
+
+    private boolean hasStyle(final DevoxxPresentation presentation, final String style) {
+        return hasStyle(provider.getEvent(presentation.getId()), style);
+    }
+}
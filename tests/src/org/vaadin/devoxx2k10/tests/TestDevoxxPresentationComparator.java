@@ -64,4 +64,23 @@ public class TestDevoxxPresentationComparator {
         Assert.assertEquals(0, list.indexOf(year2010room7));
         Assert.assertEquals(1, list.indexOf(year2010room8));
     }
+
+    @Test
+    public void testComparatorUnknownRoomLast() {
+        final DevoxxPresentation unknownRoom = new DevoxxPresentationImpl(4, year2010room8.getFromTime(),
+                year2010room8.getToTime(), "", "", DevoxxPresentationKind.KEYNOTE, null, null, "Hallway", false, null);
+
+        List<DevoxxPresentation> list = new ArrayList<DevoxxPresentation>(3);
+        list.add(unknownRoom);
+        list.add(year2010room8);
+        list.add(year2010room7);
+        Assert.assertFalse(DevoxxPresentationComparator.isSorted(list));
+
+        Collections.sort(list, new DevoxxPresentationComparator());
+
+        Assert.assertEquals(year2010room7, list.get(0));
+        Assert.assertEquals(year2010room8, list.get(1));
+        Assert.assertEquals(unknownRoom, list.get(2));
+        Assert.assertTrue(DevoxxPresentationComparator.isSorted(list));
+    }
 }
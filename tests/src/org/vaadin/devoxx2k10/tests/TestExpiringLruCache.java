@@ -0,0 +1,82 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.util.ExpiringLruCache;
+
+public class TestExpiringLruCache {
+
+    private long now;
+    private ExpiringLruCache<String, Integer> cache;
+
+    @Before
+    public void setup() {
+        now = 1000;
+        cache = new ExpiringLruCache<String, Integer>(3, 100) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.put("d", 4);
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiresEntries() {
+        cache.put("a", 1);
+        now += 50;
+        cache.put("b", 2);
+        now += 50;
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(2), cache.get("b"));
+        Assert.assertEquals(Arrays.asList("b"), cache.keys());
+        Assert.assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void testHitAndMissCounts() {
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.peek("a");
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testAtomicOperations() {
+        Assert.assertNull(cache.putIfAbsent("a", 1));
+        Assert.assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+
+        Assert.assertFalse(cache.replace("a", 2, 3));
+        now += 60;
+        Assert.assertTrue(cache.replace("a", 1, 3));
+
+        // replacing restarts the time to live
+        now += 60;
+        Assert.assertEquals(Integer.valueOf(3), cache.get("a"));
+
+        Assert.assertFalse(cache.remove("a", 1));
+        Assert.assertTrue(cache.remove("a", 3));
+        Assert.assertEquals(0, cache.size());
+    }
+}
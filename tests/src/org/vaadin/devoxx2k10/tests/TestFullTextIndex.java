@@ -0,0 +1,114 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.data.FullTextIndex;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
+import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationImpl;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxSpeakerImpl;
+
+public class TestFullTextIndex {
+
+    private static final List<DevoxxSpeaker> NO_SPEAKERS = Collections.emptyList();
+
+    @Test
+    public void testRanksTitleMatchesFirst() {
+        final DevoxxPresentation summaryMatch = createPresentation(1, "Effective tooling", "Tips for Java developers",
+                NO_SPEAKERS);
+        final DevoxxPresentation titleMatch = createPresentation(2, "Java Puzzlers", "Traps and pitfalls", NO_SPEAKERS);
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(summaryMatch, titleMatch), null);
+
+        Assert.assertEquals(Arrays.asList(titleMatch, summaryMatch), index.search("java"));
+    }
+
+    @Test
+    public void testPrefixAndAllTermsMatch() {
+        final DevoxxPresentation first = createPresentation(1, "Scaling Java with Akka", "Actors on the JVM",
+                NO_SPEAKERS);
+        final DevoxxPresentation second = createPresentation(2, "Java Performance", "Garbage collection tuning",
+                NO_SPEAKERS);
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(first, second), null);
+
+        Assert.assertEquals(2, index.search("jav").size());
+        Assert.assertEquals(Arrays.asList(first), index.search("java ak"));
+        Assert.assertEquals(Arrays.asList(second), index.search("the garbage"));
+        Assert.assertTrue(index.search("java cobol").isEmpty());
+        Assert.assertTrue(index.search("  ").isEmpty());
+    }
+
+    @Test
+    public void testSpeakersAndDiacritics() {
+        final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
+        speakers.add(new DevoxxSpeakerImpl(1, "José Paumard", null));
+        final DevoxxPresentation presentation = createPresentation(1, "Lambdas", null, speakers);
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(presentation), null);
+
+        Assert.assertEquals(Arrays.asList(presentation), index.search("jose"));
+        Assert.assertEquals(Arrays.asList(presentation), index.search("JOSÉ pau"));
+    }
+
+    @Test
+    public void testRebuildForChangedSchedule() {
+        final DevoxxPresentation unchanged = createPresentation(1, "Java Puzzlers", "Traps", NO_SPEAKERS);
+        final DevoxxPresentation original = createPresentation(2, "Scala", "Functional programming", NO_SPEAKERS);
+        final FullTextIndex previous = FullTextIndex.build(Arrays.asList(unchanged, original), null);
+
+        final DevoxxPresentation changed = createPresentation(2, "Kotlin", "Functional programming", NO_SPEAKERS);
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(unchanged, changed), previous);
+
+        Assert.assertTrue(index.search("scala").isEmpty());
+        Assert.assertEquals(Arrays.asList(changed), index.search("kotlin"));
+        Assert.assertEquals(Arrays.asList(unchanged), index.search("puzzlers"));
+    }
+
+    @Test
+    public void testRebuildForTitleWithSameHashCode() {
+        // "Aa" and "BB" have the same hash code
+        final DevoxxPresentation original = createPresentation(1, "Aa", "Traps", NO_SPEAKERS);
+        final FullTextIndex previous = FullTextIndex.build(Arrays.asList(original), null);
+
+        final DevoxxPresentation changed = createPresentation(1, "BB", "Traps", NO_SPEAKERS);
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(changed), previous);
+
+        Assert.assertTrue(index.search("aa").isEmpty());
+        Assert.assertEquals(Arrays.asList(changed), index.search("bb"));
+    }
+
+    @Test
+    public void testRebuildForChangedTagsAndSpeakers() {
+        final List<DevoxxSpeaker> speakers = new ArrayList<DevoxxSpeaker>();
+        speakers.add(new DevoxxSpeakerImpl(1, "Joshua Bloch", null));
+        final DevoxxPresentation original = createPresentation(1, "Java Puzzlers", "Traps", speakers);
+        original.getTags().add("Scala");
+        final FullTextIndex previous = FullTextIndex.build(Arrays.asList(original), null);
+
+        final List<DevoxxSpeaker> changedSpeakers = new ArrayList<DevoxxSpeaker>();
+        changedSpeakers.add(new DevoxxSpeakerImpl(1, "Neal Gafter", null));
+        final DevoxxPresentation changed = createPresentation(1, "Java Puzzlers", "Traps", changedSpeakers);
+        changed.getTags().add("Kotlin");
+        final FullTextIndex index = FullTextIndex.build(Arrays.asList(changed), previous);
+
+        Assert.assertTrue(index.search("bloch").isEmpty());
+        Assert.assertEquals(Arrays.asList(changed), index.search("gafter"));
+        Assert.assertTrue(index.search("scala").isEmpty());
+        Assert.assertEquals(Arrays.asList(changed), index.search("kotlin"));
+    }
+
+    private static DevoxxPresentation createPresentation(final int id, final String title, final String summary,
+            final List<DevoxxSpeaker> speakers) {
+        final DevoxxPresentationImpl presentation = new DevoxxPresentationImpl(id, new Date(), new Date(), "", "",
+                DevoxxPresentationKind.TALK, title, speakers, "Room 8", false, null);
+        presentation.setSummary(summary);
+        presentation.setTags(new HashSet<String>());
+        return presentation;
+    }
+}
@@ -0,0 +1,136 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.data.http.impl.HttpClientImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestHttpClient {
+
+    /** Several lines with characters outside ASCII */
+    private static final String BODY = "[{\"firstName\":\"Jörg\",\n\"lastName\":\"Müller\"},\r\n{\"title\":\"Café\"}\n,{}]\n";
+
+    private HttpServer server;
+    private HttpClient httpClient;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        httpClient = new HttpClientImpl();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testIdentity() throws IOException {
+        Assert.assertEquals(BODY, httpClient.get(getUrl("identity/utf-8")).getResponse());
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        Assert.assertEquals(BODY, httpClient.get(getUrl("gzip/utf-8")).getResponse());
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        Assert.assertEquals(BODY, httpClient.get(getUrl("deflate/utf-8")).getResponse());
+    }
+
+    @Test
+    public void testRawDeflate() throws IOException {
+        Assert.assertEquals(BODY, httpClient.get(getUrl("rawdeflate/utf-8")).getResponse());
+    }
+
+    @Test
+    public void testCharset() throws IOException {
+        Assert.assertEquals(BODY, httpClient.get(getUrl("gzip/iso-8859-1")).getResponse());
+        Assert.assertEquals(BODY, httpClient.get(getUrl("identity/iso-8859-1")).getResponse());
+        // UTF-8 without a charset in the Content-Type
+        Assert.assertEquals(BODY, httpClient.get(getUrl("deflate/none")).getResponse());
+    }
+
+    @Test
+    public void testStreamedLines() throws IOException {
+        final HttpResponse response = httpClient.openStream(getUrl("rawdeflate/iso-8859-1"), null);
+        try {
+            final StringBuilder result = new StringBuilder();
+            final char[] buffer = new char[5];
+            int read;
+            while ((read = response.getReader().read(buffer)) != -1) {
+                result.append(buffer, 0, read);
+            }
+            // every line is returned with its line separator
+            Assert.assertEquals(BODY, result.toString());
+        } finally {
+            response.close();
+        }
+    }
+
+    private String getUrl(final String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    /**
+     * Responds to /&lt;encoding&gt;/&lt;charset&gt; with the body encoded
+     * accordingly.
+     */
+    private static void respond(final HttpExchange exchange) throws IOException {
+        final String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+        final String encoding = path[0];
+        final String charset = path[1];
+
+        final byte[] bytes = BODY.getBytes(charset.equals("none") ? "UTF-8" : charset);
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        final OutputStream out;
+        if (encoding.equals("gzip")) {
+            out = new GZIPOutputStream(encoded);
+        } else if (encoding.equals("deflate")) {
+            out = new DeflaterOutputStream(encoded);
+        } else if (encoding.equals("rawdeflate")) {
+            out = new DeflaterOutputStream(encoded, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        } else {
+            out = encoded;
+        }
+        out.write(bytes);
+        out.close();
+
+        if (!encoding.equals("identity")) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding.equals("rawdeflate") ? "deflate" : encoding);
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                charset.equals("none") ? "application/json" : "application/json; charset=\"" + charset + "\"");
+        exchange.sendResponseHeaders(200, encoded.size());
+        final OutputStream body = exchange.getResponseBody();
+        body.write(encoded.toByteArray());
+        body.close();
+    }
+}
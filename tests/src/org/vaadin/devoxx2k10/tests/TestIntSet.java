@@ -0,0 +1,71 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.util.IntSet;
+
+public class TestIntSet {
+
+    @Test
+    public void testAddAndRemove() {
+        final IntSet set = new IntSet();
+        Assert.assertTrue(set.isEmpty());
+
+        Assert.assertTrue(set.add(42));
+        Assert.assertTrue(set.add(7));
+        Assert.assertFalse(set.add(42));
+        Assert.assertTrue(set.add(100));
+
+        Assert.assertEquals(3, set.size());
+        Assert.assertArrayEquals(new int[] { 7, 42, 100 }, set.toArray());
+        Assert.assertTrue(set.contains(7));
+        Assert.assertFalse(set.contains(8));
+
+        Assert.assertTrue(set.remove(42));
+        Assert.assertFalse(set.remove(42));
+        Assert.assertArrayEquals(new int[] { 7, 100 }, set.toArray());
+        Assert.assertEquals(100, set.get(1));
+    }
+
+    @Test
+    public void testSameContentsAsHashSet() {
+        final Random random = new Random(42);
+        final IntSet set = new IntSet();
+        final Set<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < 5000; i++) {
+            final int value = random.nextInt(300);
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.add(value), set.add(value));
+            } else {
+                Assert.assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+
+        Assert.assertEquals(expected.size(), set.size());
+        for (int value = 0; value < 300; value++) {
+            Assert.assertEquals(expected.contains(value), set.contains(value));
+        }
+        for (int i = 1; i < set.size(); i++) {
+            Assert.assertTrue(set.get(i - 1) < set.get(i));
+        }
+    }
+
+    @Test
+    public void testCopyAndEquals() {
+        final IntSet set = new IntSet();
+        set.add(3);
+        set.add(1);
+
+        final IntSet copy = new IntSet(set);
+        Assert.assertEquals(set, copy);
+        Assert.assertEquals(set.hashCode(), copy.hashCode());
+
+        copy.add(2);
+        Assert.assertFalse(set.equals(copy));
+        Assert.assertEquals(2, set.size());
+    }
+}
@@ -0,0 +1,226 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.MyScheduleWriter;
+import org.vaadin.devoxx2k10.data.MyScheduleWriter.SaveFailureListener;
+import org.vaadin.devoxx2k10.data.RestApiException;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.MyScheduleUser;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+import org.vaadin.devoxx2k10.util.IntSet;
+
+public class TestMyScheduleWriter {
+
+    private SavingFacade facade;
+    private MyScheduleWriter writer;
+    private List<DevoxxPresentation> schedule;
+    private MyScheduleUser user;
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Before
+    public void setup() {
+        facade = new SavingFacade();
+        writer = new MyScheduleWriter(2, 50, 3, 20, 100);
+        schedule = facade.getFullSchedule();
+        user = new MyScheduleUser("test@example.com", "code");
+        user.setFavourites(new IntSet());
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdown(1000);
+    }
+
+    @Test
+    public void testRapidChangesCoalesced() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            user.addFavourite(schedule.get(i));
+            writer.save(facade, user, null);
+        }
+        Assert.assertEquals(1, writer.getQueueSize());
+
+        waitUntilSaved();
+        Assert.assertEquals(1, facade.saveCount.get());
+        Assert.assertEquals(user.getFavourites(), facade.savedFavourites);
+    }
+
+    @Test
+    public void testRetriedUntilSaved() throws InterruptedException {
+        facade.failuresLeft.set(2);
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, null);
+
+        waitUntilSaved();
+        Assert.assertEquals(3, facade.saveCount.get());
+        Assert.assertEquals(user.getFavourites(), facade.savedFavourites);
+        Assert.assertTrue(writer.toString().contains("retries=2"));
+    }
+
+    @Test
+    public void testFailureReportedAfterMaxAttempts() throws InterruptedException {
+        facade.failuresLeft.set(10);
+        final RecordingListener listener = new RecordingListener();
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, listener);
+
+        Assert.assertTrue(listener.failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, facade.saveCount.get());
+        Assert.assertEquals(0, writer.getQueueSize());
+        Assert.assertSame(user, listener.user);
+    }
+
+    @Test
+    public void testRejectedCodeNotRetried() throws InterruptedException {
+        facade.rejectCode = true;
+        final RecordingListener listener = new RecordingListener();
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, listener);
+
+        Assert.assertTrue(listener.failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, facade.saveCount.get());
+        Assert.assertTrue(listener.codeRejected);
+        // left for the session to clear
+        Assert.assertEquals("code", user.getActivationCode());
+    }
+
+    @Test
+    public void testAttemptsCountedAcrossChanges() throws InterruptedException {
+        facade.failuresLeft.set(100);
+        final RecordingListener listener = new RecordingListener();
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, listener);
+
+        // keep changing the favourites while saving fails
+        for (int i = 1; i < 50; i++) {
+            Thread.sleep(20);
+            if (listener.failed.getCount() == 0) {
+                break;
+            }
+            user.addFavourite(schedule.get(i));
+            writer.save(facade, user, listener);
+        }
+
+        Assert.assertTrue(listener.failed.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(listener.codeRejected);
+        Assert.assertEquals(3, facade.saveCount.get());
+    }
+
+    @Test
+    public void testPendingSaveSavedAtShutdown() {
+        writer.shutdown(1000);
+        writer = new MyScheduleWriter(2, 60000, 3, 20, 100);
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, null);
+        Assert.assertEquals(0, facade.saveCount.get());
+
+        writer.shutdown(5000);
+        Assert.assertEquals(1, facade.saveCount.get());
+        Assert.assertEquals(user.getFavourites(), facade.savedFavourites);
+        Assert.assertEquals(0, writer.getQueueSize());
+    }
+
+    @Test
+    public void testRetrySavedAtShutdown() throws InterruptedException {
+        writer.shutdown(1000);
+        writer = new MyScheduleWriter(2, 0, 3, 60000, 60000);
+        facade.failuresLeft.set(1);
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, null);
+
+        // wait for the first attempt to fail
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!writer.toString().contains("retries=1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        writer.shutdown(5000);
+        Assert.assertEquals(2, facade.saveCount.get());
+        Assert.assertEquals(user.getFavourites(), facade.savedFavourites);
+    }
+
+    @Test
+    public void testFailureReportedAtShutdown() throws InterruptedException {
+        writer.shutdown(1000);
+        writer = new MyScheduleWriter(2, 60000, 3, 20, 100);
+        facade.failuresLeft.set(10);
+        final RecordingListener listener = new RecordingListener();
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, listener);
+
+        writer.shutdown(5000);
+        // attempted once without retrying
+        Assert.assertEquals(1, facade.saveCount.get());
+        Assert.assertEquals(0, listener.failed.getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSaveRejectedAfterShutdown() {
+        writer.shutdown(1000);
+        user.addFavourite(schedule.get(0));
+        writer.save(facade, user, null);
+    }
+
+    private void waitUntilSaved() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, writer.getQueueSize());
+    }
+
+    private static class RecordingListener implements SaveFailureListener {
+
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private volatile MyScheduleUser user;
+        private volatile boolean codeRejected;
+
+        @Override
+        public void saveFailed(final MyScheduleUser user, final RestApiException e, final boolean codeRejected) {
+            this.user = user;
+            this.codeRejected = codeRejected;
+            failed.countDown();
+        }
+    }
+
+    /**
+     * Records the saved favourites instead of posting them, failing as
+     * requested.
+     */
+    private static class SavingFacade extends RestApiFacadeImpl {
+
+        private final AtomicInteger saveCount = new AtomicInteger();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+        private volatile boolean rejectCode;
+        private volatile IntSet savedFavourites;
+
+        public SavingFacade() {
+            super(new SnapshotHttpClient("20101112110640"));
+        }
+
+        @Override
+        public void saveMySchedule(final MyScheduleUser user) throws RestApiException {
+            saveCount.incrementAndGet();
+            if (rejectCode) {
+                user.setActivationCode(null);
+                throw new RestApiException("Activation code rejected. Please try signing in again.");
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new RuntimeException("Connection refused");
+            }
+            savedFavourites = new IntSet(user.getFavourites());
+        }
+    }
+}
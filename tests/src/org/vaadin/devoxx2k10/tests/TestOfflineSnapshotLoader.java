@@ -0,0 +1,196 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineSnapshotLoader;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotArchive;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+
+public class TestOfflineSnapshotLoader {
+
+    private static final String CHANGED_PATH = "/events/speakers/219";
+
+    private SnapshotArchive source;
+    private ChangingHttpClient httpClient;
+    private File baseDir;
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Before
+    public void setup() throws IOException {
+        source = SnapshotArchive.forPrefix("20101112110640");
+        httpClient = new ChangingHttpClient(new SnapshotHttpClient(source));
+        baseDir = File.createTempFile("snapshots", "");
+        baseDir.delete();
+        baseDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(baseDir);
+    }
+
+    @Test
+    public void testFullSnapshot() throws Exception {
+        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader("full", baseDir, httpClient, 4, 0);
+        loader.execute();
+
+        final SnapshotArchive archive = SnapshotArchive.open(new File(baseDir, "full" + SnapshotArchive.FILE_SUFFIX));
+        Assert.assertEquals(source.getPaths(), archive.getPaths());
+        for (final String path : source.getPaths()) {
+            Assert.assertEquals(path, source.get(path), archive.get(path));
+            // each speaker is loaded only once
+            Assert.assertEquals(path, 1, httpClient.getRequestCount(path));
+        }
+        Assert.assertTrue(new File(baseDir, "full" + CHANGED_PATH).isFile());
+        Assert.assertEquals(source.size(), loader.getChangedPaths().size());
+    }
+
+    @Test
+    public void testIncrementalSnapshot() throws Exception {
+        new OfflineSnapshotLoader("first", baseDir, httpClient, 4, 0).execute();
+        httpClient.changed = true;
+
+        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader("second", baseDir, httpClient, 4, 0);
+        loader.setPrevious("first");
+        loader.execute();
+
+        Assert.assertEquals(Collections.singleton(CHANGED_PATH), loader.getChangedPaths());
+        Assert.assertTrue(loader.toString().contains("notModified=" + (source.size() - 1)));
+
+        final SnapshotArchive diff = SnapshotArchive.open(new File(baseDir, "second"
+                + OfflineSnapshotLoader.DIFF_SUFFIX + SnapshotArchive.FILE_SUFFIX));
+        Assert.assertEquals(Collections.singleton(CHANGED_PATH), diff.getPaths());
+        Assert.assertEquals(ChangingHttpClient.CHANGED_JSON, diff.get(CHANGED_PATH));
+        Assert.assertTrue(diff.getRemovedPaths().isEmpty());
+
+        final SnapshotArchive full = SnapshotArchive.open(new File(baseDir, "second" + SnapshotArchive.FILE_SUFFIX));
+        Assert.assertEquals(source.getPaths(), full.getPaths());
+        Assert.assertEquals(ChangingHttpClient.CHANGED_JSON, full.get(CHANGED_PATH));
+        final String schedulePath = SnapshotArchive.getPath(RestApiFacadeImpl.SCHEDULE_URL);
+        Assert.assertEquals(source.get(schedulePath), full.get(schedulePath));
+    }
+
+    @Test
+    public void testRemovedPathInDiff() throws Exception {
+        final String removedPath = "/events/speakers/99999";
+        final Map<String, HttpResponse> first = new TreeMap<String, HttpResponse>();
+        for (final String path : source.getPaths()) {
+            first.put(path, source.getResponse(path));
+        }
+        first.put(removedPath, new HttpResponse(HttpURLConnection.HTTP_OK, "{\"id\":99999}"));
+        SnapshotArchive.write(new File(baseDir, "first" + SnapshotArchive.FILE_SUFFIX), first);
+
+        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader("second", baseDir, httpClient, 4, 0);
+        loader.setPrevious("first");
+        loader.execute();
+
+        Assert.assertEquals(Collections.singleton(removedPath), loader.getRemovedPaths());
+        final SnapshotArchive diff = SnapshotArchive.open(new File(baseDir, "second"
+                + OfflineSnapshotLoader.DIFF_SUFFIX + SnapshotArchive.FILE_SUFFIX));
+        Assert.assertTrue(diff.getPaths().isEmpty());
+        Assert.assertEquals(Collections.singleton(removedPath), diff.getRemovedPaths());
+        Assert.assertNull(diff.get(removedPath));
+
+        final SnapshotArchive full = SnapshotArchive.open(new File(baseDir, "second" + SnapshotArchive.FILE_SUFFIX));
+        Assert.assertEquals(source.getPaths(), full.getPaths());
+        Assert.assertTrue(full.getRemovedPaths().isEmpty());
+    }
+
+    @Test
+    public void testScheduleFailure() throws Exception {
+        httpClient.failing = SnapshotArchive.getPath(RestApiFacadeImpl.SCHEDULE_URL);
+
+        final OfflineSnapshotLoader loader = new OfflineSnapshotLoader("failed", baseDir, httpClient, 4, 0);
+        try {
+            loader.execute();
+            Assert.fail("Expected the schedule to fail");
+        } catch (final IOException e) {
+            // expected
+        }
+        Assert.assertFalse(new File(baseDir, "failed" + SnapshotArchive.FILE_SUFFIX).exists());
+        Assert.assertFalse(new File(baseDir, "failed").exists());
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Counts the requests by path and changes the response of one speaker or
+     * fails the requests of one path when requested.
+     */
+    private static class ChangingHttpClient implements HttpClient {
+
+        private static final String CHANGED_JSON = "{\"id\":219,\"firstName\":\"Changed\"}";
+
+        private final HttpClient delegate;
+        private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        private volatile boolean changed;
+        private volatile String failing;
+
+        public ChangingHttpClient(final HttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        public int getRequestCount(final String path) {
+            final AtomicInteger count = requestCounts.get(path);
+            return count != null ? count.get() : 0;
+        }
+
+        @Override
+        public HttpResponse get(final String urlString) throws IOException {
+            return get(urlString, null);
+        }
+
+        @Override
+        public HttpResponse get(final String urlString, final HttpResponse previousResponse) throws IOException {
+            final String path = SnapshotArchive.getPath(urlString);
+            requestCounts.putIfAbsent(path, new AtomicInteger());
+            requestCounts.get(path).incrementAndGet();
+
+            if (path.equals(failing)) {
+                throw new IOException("Connection refused");
+            }
+            if (changed && path.equals(CHANGED_PATH)) {
+                return new HttpResponse(HttpURLConnection.HTTP_OK, CHANGED_JSON, "\"changed\"", null);
+            }
+            return delegate.get(urlString, previousResponse);
+        }
+
+        @Override
+        public HttpResponse openStream(final String urlString, final HttpResponse previousResponse)
+                throws IOException {
+            return get(urlString, previousResponse);
+        }
+
+        @Override
+        public int post(final String urlString, final String postData) throws IOException {
+            return delegate.post(urlString, postData);
+        }
+    }
+}
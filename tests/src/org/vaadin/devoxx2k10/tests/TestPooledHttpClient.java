@@ -0,0 +1,173 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.data.http.impl.PooledHttpClientImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestPooledHttpClient {
+
+    private static final String BODY = "{\"id\":1}";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+    private volatile long responseDelayMs;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final int active = activeRequests.incrementAndGet();
+                synchronized (maxActiveRequests) {
+                    maxActiveRequests.set(Math.max(maxActiveRequests.get(), active));
+                }
+                try {
+                    Thread.sleep(responseDelayMs);
+                    final byte[] body = BODY.getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    final OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    activeRequests.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testConnectionsPerHostBounded() throws Exception {
+        responseDelayMs = 50;
+        final PooledHttpClientImpl client = new PooledHttpClientImpl(2, 60000, 5000, 5000);
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (BODY.equals(client.get(getUrl("127.0.0.1")).getResponse())) {
+                            succeeded.incrementAndGet();
+                        }
+                    } catch (final IOException e) {
+                        // counted as a failure
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        Assert.assertEquals(6, succeeded.get());
+        Assert.assertTrue(maxActiveRequests.get() <= 2);
+    }
+
+    @Test
+    public void testTimeoutWaitingForConnection() throws Exception {
+        final PooledHttpClientImpl client = new PooledHttpClientImpl(1, 60000, 200, 5000);
+
+        final HttpResponse leased = client.openStream(getUrl("127.0.0.1"), null);
+        try {
+            client.get(getUrl("127.0.0.1"));
+            Assert.fail("Expected a timeout");
+        } catch (final IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timed out"));
+        }
+
+        leased.close();
+        Assert.assertEquals(BODY, client.get(getUrl("127.0.0.1")).getResponse());
+    }
+
+    @Test
+    public void testZeroTimeoutWaitsForConnection() throws Exception {
+        final PooledHttpClientImpl client = new PooledHttpClientImpl(1, 60000, 0, 5000);
+
+        final HttpResponse leased = client.openStream(getUrl("127.0.0.1"), null);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (BODY.equals(client.get(getUrl("127.0.0.1")).getResponse())) {
+                        succeeded.incrementAndGet();
+                    }
+                } catch (final IOException e) {
+                    // counted as a failure
+                }
+            }
+        });
+        waiting.start();
+        waiting.join(300);
+        Assert.assertTrue(waiting.isAlive());
+
+        leased.close();
+        waiting.join(5000);
+        Assert.assertEquals(1, succeeded.get());
+    }
+
+    @Test
+    public void testIdlePoolsEvicted() throws Exception {
+        final PooledHttpClientImpl client = new PooledHttpClientImpl(1, 20, 200, 5000);
+
+        // a pool with a leased connection is not evicted even when idle
+        final HttpResponse leased = client.openStream(getUrl("127.0.0.1"), null);
+        Thread.sleep(50);
+        client.get(getUrl("localhost"));
+        Assert.assertEquals(2, client.getHostPoolCount());
+
+        leased.close();
+        Thread.sleep(50);
+        client.get(getUrl("localhost"));
+        Assert.assertEquals(1, client.getHostPoolCount());
+
+        // the evicted host still bounds its connections
+        final HttpResponse leasedAgain = client.openStream(getUrl("127.0.0.1"), null);
+        try {
+            client.get(getUrl("127.0.0.1"));
+            Assert.fail("Expected a timeout");
+        } catch (final IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timed out"));
+        } finally {
+            leasedAgain.close();
+        }
+    }
+
+    private String getUrl(final String host) {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/events/1";
+    }
+}
@@ -0,0 +1,46 @@
+package org.vaadin.devoxx2k10.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.util.RateLimiter;
+
+public class TestRateLimiter {
+
+    @Test
+    public void testRequestsSpacedEvenly() throws InterruptedException {
+        final RateLimiter rateLimiter = new RateLimiter(50);
+
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            rateLimiter.acquire();
+        }
+
+        // the first request is allowed immediately
+        Assert.assertTrue(System.currentTimeMillis() - start >= 10 * 1000 / 50);
+    }
+
+    @Test
+    public void testIdleTimeNotSaved() throws InterruptedException {
+        final RateLimiter rateLimiter = new RateLimiter(50);
+        rateLimiter.acquire();
+        Thread.sleep(200);
+
+        // the idle time doesn't allow a burst of requests afterwards
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            rateLimiter.acquire();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 5 * 1000 / 50);
+    }
+
+    @Test
+    public void testNoLimit() throws InterruptedException {
+        final RateLimiter rateLimiter = new RateLimiter(0);
+
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.acquire();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
@@ -1,5 +1,9 @@
 package org.vaadin.devoxx2k10.tests;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Assert;
@@ -7,10 +11,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.vaadin.devoxx2k10.Configuration;
 import org.vaadin.devoxx2k10.data.CachingRestApiFacade;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.TagIndex;
 import org.vaadin.devoxx2k10.data.domain.DevoxxPresentation;
+import org.vaadin.devoxx2k10.data.domain.DevoxxPresentationKind;
 import org.vaadin.devoxx2k10.data.domain.DevoxxSpeaker;
+import org.vaadin.devoxx2k10.data.domain.impl.DevoxxPresentationImpl;
 import org.vaadin.devoxx2k10.data.http.HttpClient;
-import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
 
 public class TestRestApiFacade {
 
@@ -23,7 +31,7 @@ public class TestRestApiFacade {
 
     @Before
     public void setup() {
-        httpClient = new OfflineHttpClientMock("20101112110640");
+        httpClient = new SnapshotHttpClient("20101112110640");
         devoxxFacade = new CachingRestApiFacade(httpClient);
     }
     
@@ -33,6 +41,34 @@ public class TestRestApiFacade {
         Assert.assertEquals(174, schedule.size());
     }
 
+    @Test
+    public void testFullScheduleNotModified() {
+        final RestApiFacadeImpl facade = new RestApiFacadeImpl(httpClient);
+        final List<DevoxxPresentation> first = facade.getFullSchedule();
+        final List<DevoxxPresentation> second = facade.getFullSchedule();
+        Assert.assertEquals(174, second.size());
+        Assert.assertSame(first.get(2), second.get(2));
+    }
+
+    @Test
+    public void testParsedScheduleNotSharedByInstances() {
+        final List<DevoxxPresentation> first = new RestApiFacadeImpl(httpClient).getFullSchedule();
+        final List<DevoxxPresentation> other = new RestApiFacadeImpl(new SnapshotHttpClient("20101112110640"))
+                .getFullSchedule();
+        Assert.assertEquals(first, other);
+        Assert.assertNotSame(first.get(2), other.get(2));
+    }
+
+    @Test
+    public void testStreamingScheduleParser() throws IOException {
+        final JsonTreeScheduleParser facade = new JsonTreeScheduleParser(httpClient);
+        final String json = httpClient.get(RestApiFacadeImpl.SCHEDULE_URL).getResponse();
+        final List<DevoxxPresentation> streamed = facade.parseStreaming(json);
+        final List<DevoxxPresentation> tree = facade.parseTree(json);
+        Assert.assertEquals(174, streamed.size());
+        Assert.assertEquals(tree, streamed);
+    }
+
     @Test
     public void testSpeaker() {
         final List<DevoxxPresentation> schedule = devoxxFacade.getFullSchedule();
@@ -57,4 +93,70 @@ public class TestRestApiFacade {
         Assert.assertTrue(event.getTags().contains("PDF"));
     }
 
+    @Test
+    public void testPresentationTimesImmutable() {
+        final List<DevoxxPresentation> schedule = devoxxFacade.getFullSchedule();
+        final DevoxxPresentation event = schedule.get(2);
+        Assert.assertSame(event.getFromTime(), event.getFromTime());
+        Assert.assertTrue(event.getToTime().getTime() > event.getFromTime().getTime());
+
+        try {
+            event.getFromTime().setTime(0);
+            Assert.fail("Presentation times must not be modifiable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        // presentations starting at the same time share the same instance
+        for (final DevoxxPresentation other : schedule) {
+            if (other.getFromTime().equals(event.getFromTime())) {
+                Assert.assertSame(event.getFromTime(), other.getFromTime());
+            }
+        }
+    }
+
+    @Test
+    public void testTagIndex() {
+        final List<DevoxxPresentation> schedule = devoxxFacade.getFullSchedule();
+        final TagIndex index = TagIndex.build(schedule);
+
+        final List<DevoxxPresentation> result = index.search("PDF");
+        Assert.assertTrue(result.contains(schedule.get(2)));
+        Assert.assertEquals(result, index.search(" pdf "));
+        Assert.assertTrue(index.search("no such tag").isEmpty());
+
+        final int[] positions = index.getPositions("java");
+        for (int i = 1; i < positions.length; i++) {
+            Assert.assertTrue(positions[i - 1] < positions[i]);
+        }
+    }
+
+    @Test
+    public void testTagIndexCaseVariants() {
+        final DevoxxPresentationImpl presentation = new DevoxxPresentationImpl(1, new Date(), new Date(), "", "",
+                DevoxxPresentationKind.TALK, "title", null, "Room 8", false, null);
+        presentation.setTags(new HashSet<String>(Arrays.asList("Java", "java", "JAVA")));
+        final TagIndex index = TagIndex.build(Arrays.<DevoxxPresentation> asList(presentation));
+
+        Assert.assertArrayEquals(new int[] { 0 }, index.getPositions("java"));
+        Assert.assertEquals(1, index.search("Java").size());
+    }
+
+    @Test
+    public void testSpeakerRegistry() {
+        final List<DevoxxPresentation> schedule = devoxxFacade.getFullSchedule();
+        final DevoxxSpeaker speaker = devoxxFacade.getSpeaker(129);
+        Assert.assertEquals(129, speaker.getId());
+
+        final List<DevoxxPresentation> talks = devoxxFacade.getTalksBySpeaker(129);
+        Assert.assertEquals(5, talks.size());
+        for (final DevoxxPresentation talk : talks) {
+            Assert.assertTrue(schedule.contains(talk));
+            // every talk refers to the same speaker instance
+            Assert.assertSame(speaker, talk.getSpeakers().get(talk.getSpeakers().indexOf(speaker)));
+        }
+
+        Assert.assertNull(devoxxFacade.getSpeaker(-1));
+        Assert.assertTrue(devoxxFacade.getTalksBySpeaker(-1).isEmpty());
+    }
 }
@@ -0,0 +1,87 @@
+package org.vaadin.devoxx2k10.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.devoxx2k10.Configuration;
+import org.vaadin.devoxx2k10.data.RestApiFacadeImpl;
+import org.vaadin.devoxx2k10.data.http.HttpClient;
+import org.vaadin.devoxx2k10.data.http.HttpResponse;
+import org.vaadin.devoxx2k10.data.http.impl.OfflineHttpClientMock;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotArchive;
+import org.vaadin.devoxx2k10.data.http.impl.SnapshotHttpClient;
+
+public class TestSnapshotHttpClient {
+
+    static {
+        Configuration.loadConfigurationFile("/test.properties");
+    }
+
+    @Test
+    public void testSameResponsesAsOfflineMock() throws IOException {
+        final SnapshotArchive archive = SnapshotArchive.forPrefix("20101112110640");
+        Assert.assertEquals(272, archive.size());
+
+        final HttpClient mock = new OfflineHttpClientMock("20101112110640");
+        final HttpClient snapshot = new SnapshotHttpClient(archive);
+        for (final String path : archive.getPaths()) {
+            final String url = RestApiFacadeImpl.REST_API_BASE_URL + path;
+            final HttpResponse expected = mock.get(url);
+            final HttpResponse actual = snapshot.get(url);
+            Assert.assertEquals(url, expected.getResponse(), actual.getResponse());
+            Assert.assertEquals(url, expected.getETag(), actual.getETag());
+        }
+
+        final String unknown = RestApiFacadeImpl.REST_API_BASE_URL + "/events/1/schedule/nobody@example.com";
+        Assert.assertEquals(mock.get(unknown).getResponse(), snapshot.get(unknown).getResponse());
+        Assert.assertEquals(mock.get(unknown).getETag(), snapshot.get(unknown).getETag());
+    }
+
+    @Test
+    public void testConditionalGet() throws IOException {
+        final HttpClient snapshot = new SnapshotHttpClient("20101112110640");
+        final HttpResponse first = snapshot.get(RestApiFacadeImpl.SCHEDULE_URL);
+        Assert.assertEquals(HttpURLConnection.HTTP_OK, first.getResponseCode());
+
+        final HttpResponse second = snapshot.get(RestApiFacadeImpl.SCHEDULE_URL + "/", first);
+        Assert.assertTrue(second.isNotModified());
+        Assert.assertNull(second.getResponse());
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        final Map<String, HttpResponse> responses = new LinkedHashMap<String, HttpResponse>();
+        responses.put("/events/speakers/1", new HttpResponse(HttpURLConnection.HTTP_OK,
+                "{\"firstName\":\"Jörg\",\"lastName\":\"Müller €\"}", "\"abc\"", null));
+        responses.put("/events/speakers/2", new HttpResponse(HttpURLConnection.HTTP_OK, ""));
+        responses.put("/events/presentations/3", new HttpResponse(HttpURLConnection.HTTP_OK, "{\"id\":3}", null,
+                "Fri, 12 Nov 2010 11:06:40 GMT"));
+
+        final File file = File.createTempFile("test", SnapshotArchive.FILE_SUFFIX);
+        try {
+            SnapshotArchive.write(file, responses);
+            final SnapshotArchive archive = SnapshotArchive.open(file);
+
+            Assert.assertEquals(3, archive.size());
+            for (final Map.Entry<String, HttpResponse> response : responses.entrySet()) {
+                final HttpResponse expected = response.getValue();
+                final HttpResponse actual = archive.getResponse(response.getKey());
+                Assert.assertEquals(expected.getResponse(), actual.getResponse());
+                Assert.assertEquals(expected.getETag(), actual.getETag());
+                Assert.assertEquals(expected.getLastModified(), actual.getLastModified());
+                Assert.assertEquals(Integer.valueOf(expected.getResponse().hashCode()),
+                        archive.getHashCode(response.getKey()));
+            }
+            Assert.assertNull(archive.get("/events/speakers/4"));
+            Assert.assertNull(archive.getResponse("/events/speakers/4"));
+            Assert.assertNull(archive.getHashCode("/events/speakers/4"));
+        } finally {
+            file.delete();
+        }
+    }
+}